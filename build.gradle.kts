@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("maven-publish")
     id("signing")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.koralix.security"
@@ -30,11 +31,68 @@ java {
     withJavadocJar()
 }
 
+val java21: SourceSet by sourceSets.creating {
+    java.setSrcDirs(listOf("src/main/java21"))
+    compileClasspath += sourceSets.main.get().output
+}
+
+configurations[java21.compileOnlyConfigurationName].extendsFrom(configurations.implementation.get())
+
+tasks.named<JavaCompile>(java21.compileJavaTaskName) {
+    javaCompiler.set(javaToolchains.compilerFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+    options.release.set(21)
+}
+
+tasks.jar {
+    into("META-INF/versions/21") {
+        from(java21.output)
+    }
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+}
+
 tasks.test {
     useJUnitPlatform()
     systemProperty("log4j.configurationFile", "log4j2.xml")
 }
 
+// The test task runs against the classes directory, which never loads the Java 21 classes of the multi-release jar.
+val testJava21 by tasks.registering(Test::class) {
+    description = "Runs the tests on Java 21 against the multi-release jar."
+    group = "verification"
+    useJUnitPlatform()
+    systemProperty("log4j.configurationFile", "log4j2.xml")
+    systemProperty("multiRelease", "true")
+    javaLauncher.set(javaToolchains.launcherFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().output + files(tasks.jar) + configurations.testRuntimeClasspath.get()
+}
+
+tasks.check {
+    dependsOn(testJava21)
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Drives simulated logins against a local stand-in session server, e.g. --args=\"100000 512\"."
+    group = "verification"
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("com.koralix.security.SessionLoadTest")
+    systemProperty("log4j.configurationFile", "log4j2.xml")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    // e.g. ./gradlew jmh -PjmhIncludes=SimpleSecurityProviderBenchmark -PjmhThreads=16
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+    providers.gradleProperty("jmhThreads").orNull?.let { threads.set(it.toInt()) }
+}
+
 publishing {
     publications {
         create<MavenPublication>("mavenJava") {
@@ -1,2 +1,7 @@
+plugins {
+    // Downloads the JDK 21 of the java21 source set and of testJava21 when it is not installed.
+    id("org.gradle.toolchains.foojay-resolver-convention") version "0.4.0"
+}
+
 rootProject.name = "mc-simple-auth"
 
@@ -0,0 +1,84 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verifying and generating a batch of tokens one by one with the batch methods.
+ * Batches from {@value SimpleSecurityProvider#PARALLEL_THRESHOLD} tokens are split across the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"64", "1024"})
+    public int batchSize;
+
+    private SimpleSecurityProvider provider;
+    private List<String> hids;
+    private List<String> tokens;
+
+    @Setup
+    public void setup() throws Exception {
+        provider = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .build();
+        hids = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            hids.add(provider.getHid(UUID.randomUUID()));
+        }
+        // Verifying the latest token of a chain leaves it unchanged, so the same batch stays valid.
+        tokens = provider.generateTokens(hids);
+    }
+
+    @TearDown
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    public void verifyToken(Blackhole blackhole) {
+        for (String token : tokens) {
+            blackhole.consume(provider.verifyToken(token));
+        }
+    }
+
+    @Benchmark
+    public List<Boolean> verifyTokens() {
+        return provider.verifyTokens(tokens);
+    }
+
+    @Benchmark
+    public void generateToken(Blackhole blackhole) {
+        for (String hid : hids) {
+            blackhole.consume(provider.generateToken(hid));
+        }
+    }
+
+    @Benchmark
+    public List<String> generateTokens() {
+        return provider.generateTokens(hids);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookup and update latency of the chain stores at 8 threads, and prints the bytes used per chain.
+ * The heap used by the in memory store is measured after a full GC, so run it with a single fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(8)
+public class ChainStoreBenchmark {
+
+    @Param({"memory", "offHeap"})
+    public String store;
+
+    @Param({"10000", "1000000"})
+    public int chains;
+
+    private ChainStore chainStore;
+    private String[] hids;
+
+    @Setup
+    public void setup() throws Exception {
+        hids = new String[chains];
+        try (SimpleSecurityProvider provider = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .build()) {
+            for (int i = 0; i < chains; i++) {
+                hids[i] = provider.getHid(new UUID(0, i));
+            }
+        }
+
+        long before = usedHeap();
+        chainStore = switch (store) {
+            case "memory" -> new MemoryChainStore(chains, null);
+            case "offHeap" -> new OffHeapChainStore(chains, null);
+            default -> throw new IllegalArgumentException(store);
+        };
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < chains; i++) {
+            chainStore.compareAndSet(hids[i], null, new ChainState(i, now, 0));
+        }
+        // The hid strings are kept by the benchmark, so they are not counted for either store.
+        long bytes = chainStore instanceof OffHeapChainStore offHeap ? offHeap.allocatedBytes() : usedHeap() - before;
+        System.out.printf("%n%s store: %.1f bytes per chain%n", store, (double) bytes / chains);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public ChainState get(Cursor cursor) {
+        return chainStore.get(hids[cursor.next(chains)]);
+    }
+
+    @Benchmark
+    public boolean rotate(Cursor cursor) {
+        String hid = hids[cursor.next(chains)];
+        ChainState state = chainStore.get(hid);
+        return chainStore.compareAndSet(hid, state, new ChainState(state.chainId(), state.creationSeconds(), state.creationNanos() + 1));
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+}
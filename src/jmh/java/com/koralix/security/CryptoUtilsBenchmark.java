@@ -0,0 +1,71 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and, with the GC profiler of the jmh task, allocation rate of the public {@link CryptoUtils} helpers.
+ * {@link Threads8} runs the same benchmarks at 8 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class CryptoUtilsBenchmark {
+
+    private SecretKeySpec key;
+    private String data;
+    private String signature;
+    private byte[] uuid;
+    private byte[] salt;
+
+    @Setup
+    public void setup() throws Exception {
+        key = new SecretKeySpec("benchmark key".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        data = CryptoUtils.b64encode("tH3bN1n7e1sZ4nQ0vRkVpJ0mO6Jq3cY1fXwqWm6hT0A=:-4812759375128745:1686080549.123456789:3600".getBytes(StandardCharsets.UTF_8));
+        signature = CryptoUtils.encode(key, data);
+        uuid = new byte[16];
+        salt = new byte[8];
+    }
+
+    @Benchmark
+    public String encode() throws Exception {
+        return CryptoUtils.encode(key, data);
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return CryptoUtils.verify(key, data, signature);
+    }
+
+    @Benchmark
+    public String sha256() throws Exception {
+        return CryptoUtils.sha256(uuid, salt);
+    }
+
+    @Benchmark
+    public String randomHex() {
+        return CryptoUtils.randomHex(20);
+    }
+
+    @Threads(8)
+    public static class Threads8 extends CryptoUtilsBenchmark {
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares getHid without and with a hid cache of 64k entries, for players that fit in the cache and for four
+ * times as many players as the cache holds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class HidCacheBenchmark {
+
+    private static final int CACHE_SIZE = 1 << 16;
+
+    @Param({"16384", "262144"})
+    public int players;
+
+    private SimpleSecurityProvider uncached;
+    private SimpleSecurityProvider cached;
+    private UUID[] uuids;
+
+    @Setup
+    public void setup() {
+        uncached = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .build();
+        cached = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .hidCacheSize(CACHE_SIZE)
+                .build();
+        uuids = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            uuids[i] = UUID.randomUUID();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MetricsSnapshot metrics = cached.getMetrics().snapshot();
+        long hits = metrics.counter("hidCache.hits");
+        System.out.printf("%nhit ratio: %.3f%n", (double) hits / Math.max(1, hits + metrics.counter("hidCache.misses")));
+        uncached.close();
+        cached.close();
+    }
+
+    @Benchmark
+    public String uncached(Cursor cursor) throws Exception {
+        return uncached.getHid(uuids[cursor.next(players)]);
+    }
+
+    @Benchmark
+    public String cached(Cursor cursor) throws Exception {
+        return cached.getHid(uuids[cursor.next(players)]);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a Mac created per call, as CryptoUtils used to do, with the cached primitives at 1, 8 and 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HmacBenchmark {
+
+    private SecretKeySpec key;
+    private Hmac hmac;
+    private String body;
+    private byte[] uuid;
+    private byte[] salt;
+
+    @Setup
+    public void setup() throws Exception {
+        key = new SecretKeySpec("benchmark key".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        hmac = Hmac.sha256(key);
+        body = CryptoUtils.b64encode("tH3bN1n7e1sZ4nQ0vRkVpJ0mO6Jq3cY1fXwqWm6hT0A=:-4812759375128745:1686080549.123456789:3600".getBytes(StandardCharsets.UTF_8));
+        uuid = new byte[16];
+        salt = new byte[32];
+    }
+
+    private String perCallMac() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return CryptoUtils.b64encode(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String perCallMac_1() throws Exception {
+        return perCallMac();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String perCallMac_8() throws Exception {
+        return perCallMac();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String perCallMac_64() throws Exception {
+        return perCallMac();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String cachedMac_1() {
+        return hmac.encode(body);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String cachedMac_8() {
+        return hmac.encode(body);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String cachedMac_64() {
+        return hmac.encode(body);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String perCallDigest_64() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(salt);
+        return CryptoUtils.b64encode(digest.digest(uuid));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String cachedDigest_64() throws Exception {
+        return CryptoUtils.sha256(uuid, salt);
+    }
+
+}
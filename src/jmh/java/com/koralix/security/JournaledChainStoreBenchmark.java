@@ -0,0 +1,111 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the cold start of a journaled store with one million chains,
+ * loaded either from a snapshot or by replaying a single journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class JournaledChainStoreBenchmark {
+
+    private static final int CHAINS = 1_000_000;
+    private static final int JOURNAL_SIZE = 128 << 20;
+
+    @Param({"snapshot", "journal"})
+    public String source;
+
+    @Param({"memory", "offHeap"})
+    public String store;
+
+    private Path directory;
+    private Path copy;
+    private JournaledChainStore opened;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("chains");
+        long now = System.currentTimeMillis() / 1000;
+        try (SimpleSecurityProvider provider = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .build();
+             JournaledChainStore journaled = JournaledChainStore.open(directory, new MemoryChainStore(), JOURNAL_SIZE)) {
+            for (int i = 0; i < CHAINS; i++) {
+                journaled.compareAndSet(provider.getHid(new UUID(0, i)), null, new ChainState(i, now, i));
+            }
+            if (source.equals("snapshot")) {
+                journaled.snapshot();
+            }
+        }
+    }
+
+    /**
+     * Opening compacts the replayed journals, so each invocation starts from a fresh copy of the files.
+     */
+    @Setup(Level.Invocation)
+    public void copy() throws IOException {
+        copy = Files.createTempDirectory("chains");
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    @Benchmark
+    public JournaledChainStore open() throws IOException {
+        ChainStore delegate = switch (store) {
+            case "memory" -> new MemoryChainStore();
+            case "offHeap" -> new OffHeapChainStore(CHAINS, null);
+            default -> throw new IllegalArgumentException(store);
+        };
+        opened = JournaledChainStore.open(copy, delegate, JOURNAL_SIZE);
+        return opened;
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        opened.close();
+        delete(copy);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        delete(directory);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming profile reader with the regex extraction previously used by hasJoined.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileReaderBenchmark {
+
+    private byte[] profile;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        byte[] textures = new byte[420];
+        byte[] signature = new byte[512];
+        random.nextBytes(textures);
+        random.nextBytes(signature);
+
+        profile = ("{\n" +
+                "  \"id\" : \"4566e69fc90748ee8d71d7ba5aa00d20\",\n" +
+                "  \"name\" : \"Thinkofdeath\",\n" +
+                "  \"properties\" : [ {\n" +
+                "    \"name\" : \"textures\",\n" +
+                "    \"value\" : \"" + Base64.getEncoder().encodeToString(textures) + "\",\n" +
+                "    \"signature\" : \"" + Base64.getEncoder().encodeToString(signature) + "\"\n" +
+                "  } ],\n" +
+                "  \"profileActions\" : [ ]\n" +
+                "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public UUID regex() {
+        String uuid = new String(profile, StandardCharsets.UTF_8)
+                .replaceAll("[\\s\\n]", "")
+                .replaceAll("(?:.*)id\":\"([0-9a-f]+)\"(?:.*)", "$1");
+
+        StringBuilder formattedUUID = new StringBuilder(uuid);
+        formattedUUID.insert(8, "-");
+        formattedUUID.insert(13, "-");
+        formattedUUID.insert(18, "-");
+        formattedUUID.insert(23, "-");
+
+        return UUID.fromString(formattedUUID.toString());
+    }
+
+    @Benchmark
+    public UUID streamingId() throws IOException {
+        return ProfileReader.readId(new ByteArrayInputStream(profile));
+    }
+
+    @Benchmark
+    public GameProfile streamingProfile() throws IOException {
+        return ProfileReader.readProfile(new ByteArrayInputStream(profile));
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the random sources while 16 threads create new token chains,
+ * against a SecureRandom created per call as CryptoUtils used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class RandomSourceBenchmark {
+
+    @Param({"shared", "perThread", "buffered"})
+    public String source;
+
+    private RandomSource randomSource;
+    private SimpleSecurityProvider provider;
+
+    @Setup
+    public void setup() throws Exception {
+        randomSource = switch (source) {
+            case "shared" -> RandomSource.shared();
+            case "perThread" -> RandomSource.perThread();
+            case "buffered" -> RandomSource.buffered(4096);
+            default -> throw new IllegalArgumentException(source);
+        };
+        provider = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .randomSource(randomSource)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    public long newSecureRandom() {
+        return new SecureRandom().nextLong();
+    }
+
+    @Benchmark
+    public long nextLong() {
+        return randomSource.nextLong();
+    }
+
+    @Benchmark
+    public boolean newChain(Player player) {
+        // Verifying a rotated token breaks the chain, so the next call starts a new one.
+        String token = provider.generateToken(player.hid);
+        provider.generateToken(player.hid);
+        return provider.verifyToken(token);
+    }
+
+    @State(Scope.Thread)
+    public static class Player {
+
+        private String hid;
+
+        @Setup
+        public void setup(RandomSourceBenchmark benchmark) throws Exception {
+            hid = benchmark.provider.getHid(UUID.randomUUID());
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing a security event in the thread that verifies or generates a token,
+ * with the events delivered, rate limited and sampled out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SecurityEventsBenchmark {
+
+    private static final String HID = "jUAVhqxPUonGiyTqyD3FDrDdlvOLCfrOcXgFnnu-Ans=";
+
+    private SecurityEvents events;
+
+    @Setup
+    public void setup() {
+        events = SecurityEvents.builder(SecurityEventSink.logging(NOPLogger.NOP_LOGGER))
+                .rateLimit(SecurityEvent.Type.TOKEN_GENERATED, Integer.MAX_VALUE)
+                .sampleRate(SecurityEvent.Type.BAD_FORMAT, 0)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        events.close();
+    }
+
+    @Benchmark
+    public void delivered() {
+        events.publish(SecurityEvent.Type.TOKEN_GENERATED, HID, 1L);
+    }
+
+    @Benchmark
+    public void rateLimited() {
+        events.publish(SecurityEvent.Type.WRONG_CHAIN, HID, 1L);
+    }
+
+    @Benchmark
+    public void sampledOut() {
+        events.publish(SecurityEvent.Type.BAD_FORMAT, null, 0L);
+    }
+
+}
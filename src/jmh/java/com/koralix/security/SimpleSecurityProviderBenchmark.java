@@ -0,0 +1,125 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and, with the GC profiler of the jmh task, allocation rate of the public provider methods with
+ * different numbers of chains in the default store. {@link Threads8} runs the same benchmarks at 8 threads.
+ * Verified tokens are the latest of their chains, so verifying them leaves the store unchanged, while new tokens
+ * are generated for a separate set of chains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SimpleSecurityProviderBenchmark {
+
+    private static final int WORKING_SET = 1 << 14;
+
+    @Param({"1000", "1000000"})
+    public int chains;
+
+    private SimpleSecurityProvider provider;
+    private UUID[] uuids;
+    private String[] tokens;
+    private String[] generatedHids;
+
+    @Setup
+    public void setup() throws Exception {
+        provider = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .build();
+        uuids = new UUID[chains];
+        String[] hids = new String[chains];
+        for (int i = 0; i < chains; i++) {
+            uuids[i] = new UUID(0, i);
+            hids[i] = provider.getHid(uuids[i]);
+        }
+        // The store is filled in batches, the working set is spread over the whole store.
+        int batch = 4096;
+        for (int from = 0; from < chains; from += batch) {
+            provider.generateTokens(Arrays.asList(hids).subList(from, Math.min(chains, from + batch)));
+        }
+
+        int workingSet = Math.min(chains, WORKING_SET);
+        int step = chains / workingSet;
+        int verified = (workingSet + 1) / 2;
+        tokens = new String[verified];
+        for (int i = 0; i < verified; i++) {
+            tokens[i] = provider.generateToken(hids[i * 2 * step]);
+        }
+        generatedHids = new String[workingSet - verified];
+        for (int i = 0; i < generatedHids.length; i++) {
+            generatedHids[i] = hids[(i * 2 + 1) * step];
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    public String getHid(Cursor cursor) throws Exception {
+        return provider.getHid(uuids[cursor.next(uuids.length)]);
+    }
+
+    @Benchmark
+    public byte[] getRawHid(Cursor cursor) {
+        provider.getRawHid(uuids[cursor.next(uuids.length)], cursor.hid, 0);
+        return cursor.hid;
+    }
+
+    @Benchmark
+    public String generateToken(Cursor cursor) {
+        return provider.generateToken(generatedHids[cursor.next(generatedHids.length)]);
+    }
+
+    @Benchmark
+    public boolean verifyToken(Cursor cursor) {
+        return provider.verifyToken(tokens[cursor.next(tokens.length)]);
+    }
+
+    @Benchmark
+    public Optional<String> getHidIfValid(Cursor cursor) {
+        return provider.getHidIfValid(tokens[cursor.next(tokens.length)]);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private final SplittableRandom random = new SplittableRandom();
+        private final byte[] hid = new byte[32];
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+    @Threads(8)
+    public static class Threads8 extends SimpleSecurityProviderBenchmark {
+    }
+
+}
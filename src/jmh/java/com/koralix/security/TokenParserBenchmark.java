@@ -0,0 +1,86 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the split based token parsing previously done by verifyToken with {@link TokenParser}.
+ * Run with the gc profiler to see the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenParserBenchmark {
+
+    private SimpleSecurityProvider provider;
+    private TokenParser parser;
+    private String token;
+    private String binaryToken;
+
+    @Setup
+    public void setup() throws Exception {
+        provider = new SimpleSecurityProvider("benchmark key", 0L, SimpleSecurityProvider.Expiration.ONE_HOUR, NOPLogger.NOP_LOGGER);
+        parser = new TokenParser();
+        token = provider.generateToken(provider.getHid(UUID.randomUUID()));
+        try (SimpleSecurityProvider binary = SimpleSecurityProvider.builder("benchmark key", 0L)
+                .logger(NOPLogger.NOP_LOGGER)
+                .tokenFormat(SimpleSecurityProvider.TokenFormat.BINARY)
+                .build()) {
+            binaryToken = binary.generateToken(provider.getHid(UUID.randomUUID()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    public ParsedToken split() {
+        String[] parts = token.split("\\.");
+        String body = new String(CryptoUtils.b64decode(parts[0]), StandardCharsets.UTF_8);
+        String[] bodyParts = body.split(":");
+        String[] timeParts = bodyParts[2].split("\\.");
+        Instant instant = Instant.ofEpochSecond(Long.parseLong(timeParts[0]), Integer.parseInt(timeParts[1]));
+        return new ParsedToken(bodyParts[0], Long.parseLong(bodyParts[1]), instant.getEpochSecond(), instant.getNano(), Long.parseLong(bodyParts[3]));
+    }
+
+    @Benchmark
+    public ParsedToken parser() {
+        return parser.parse(token);
+    }
+
+    @Benchmark
+    public ParsedToken parserBinary() {
+        return parser.parse(binaryToken);
+    }
+
+    @Benchmark
+    public boolean verifyToken() {
+        return provider.verifyToken(token);
+    }
+
+    @Benchmark
+    public Object getHidIfValid() {
+        return provider.getHidIfValid(token);
+    }
+
+}
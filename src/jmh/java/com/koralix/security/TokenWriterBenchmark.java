@@ -0,0 +1,93 @@
+package com.koralix.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the String.format based token body and hex encoding previously used with {@link TokenWriter}
+ * and the lookup table hex encoder, in tokens per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenWriterBenchmark {
+
+    private Hmac hmac;
+    private TokenWriter writer;
+    private String hid;
+    private long chainId;
+    private byte[] random;
+
+    @Setup
+    public void setup() throws Exception {
+        hmac = Hmac.sha256(new SecretKeySpec("benchmark key".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        writer = new TokenWriter();
+        try (SimpleSecurityProvider provider = new SimpleSecurityProvider("benchmark key", 0L, SimpleSecurityProvider.Expiration.ONE_HOUR)) {
+            hid = provider.getHid(UUID.randomUUID());
+        }
+        chainId = new SecureRandom().nextLong();
+        random = new byte[20];
+        new SecureRandom().nextBytes(random);
+    }
+
+    @Benchmark
+    public String formatText() {
+        Instant now = Instant.now();
+        String body = hid +
+                ":" +
+                chainId +
+                ":" +
+                now.getEpochSecond() +
+                "." +
+                String.format("%09d", now.getNano()) +
+                ":" +
+                3600;
+        body = CryptoUtils.b64encode(body.getBytes(StandardCharsets.UTF_8));
+        return body + "." + hmac.encode(body);
+    }
+
+    @Benchmark
+    public String writerText() {
+        Instant now = Instant.now();
+        return writer.writeText(hid, chainId, now.getEpochSecond(), now.getNano(), 3600, hmac);
+    }
+
+    @Benchmark
+    public String writerBinary() {
+        Instant now = Instant.now();
+        return writer.writeBinary(hid, chainId, now.getEpochSecond(), now.getNano(), 3600, hmac, Hmac.LENGTH);
+    }
+
+    @Benchmark
+    public String formatHex() {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : random) {
+            hexString.append(String.format("%02x", b));
+        }
+        return hexString.toString();
+    }
+
+    @Benchmark
+    public String tableHex() {
+        return CryptoUtils.toHex(random);
+    }
+
+}
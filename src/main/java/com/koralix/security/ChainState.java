@@ -0,0 +1,14 @@
+package com.koralix.security;
+
+/**
+ * State of a token chain: its id and the creation time of its latest token.
+ * Each new token replaces the state of its chain as a whole.
+ *
+ * @param chainId Id of the chain.
+ * @param creationSeconds Creation time of the latest token, seconds since the epoch.
+ * @param creationNanos Creation time of the latest token, nanoseconds of the second.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public record ChainState(long chainId, long creationSeconds, int creationNanos) {
+}
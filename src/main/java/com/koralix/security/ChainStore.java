@@ -0,0 +1,123 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage of the token chains, one {@link ChainState} per hashed id.
+ * Implementations must be thread safe, and {@link #compareAndSet} must be atomic.
+ * Remote stores should also override the async variants, which by default run the blocking methods in the caller.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public interface ChainStore {
+
+    /**
+     * Gets the chain state of the given hashed id.
+     * @param hid Hashed id.
+     * @return The chain state, or null if there is no chain.
+     */
+    @Nullable ChainState get(@NotNull String hid);
+
+    /**
+     * Atomically replaces the chain state of the given hashed id if it is equal to the expected one.
+     * @param hid Hashed id.
+     * @param expected Expected state, or null if there must be no chain.
+     * @param update New state, or null to remove the chain.
+     * @return True if the state was replaced, false if the current state was not the expected one.
+     */
+    boolean compareAndSet(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update);
+
+    /**
+     * Removes the chain of the given hashed id, whatever its state.
+     * @param hid Hashed id.
+     */
+    void remove(@NotNull String hid);
+
+    /**
+     * Asynchronously gets the chain state of the given hashed id.
+     * @param hid Hashed id.
+     * @return The chain state, or null if there is no chain.
+     */
+    default @NotNull CompletableFuture<@Nullable ChainState> getAsync(@NotNull String hid) {
+        try {
+            return CompletableFuture.completedFuture(get(hid));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronously gets the chain states of several hashed ids, by default one by one.
+     * Remote stores should read them in a single round trip.
+     * @param hids Hashed ids.
+     * @return The chain states in the same order, null where there is no chain.
+     */
+    default @NotNull CompletableFuture<List<@Nullable ChainState>> getAllAsync(@NotNull List<String> hids) {
+        try {
+            List<ChainState> states = new ArrayList<>(hids.size());
+            for (String hid : hids) {
+                states.add(get(hid));
+            }
+            return CompletableFuture.completedFuture(states);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronously replaces the chain state of the given hashed id if it is equal to the expected one.
+     * @param hid Hashed id.
+     * @param expected Expected state, or null if there must be no chain.
+     * @param update New state, or null to remove the chain.
+     * @return True if the state was replaced, false if the current state was not the expected one.
+     * @see #compareAndSet(String, ChainState, ChainState)
+     */
+    default @NotNull CompletableFuture<Boolean> compareAndSetAsync(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+        try {
+            return CompletableFuture.completedFuture(compareAndSet(hid, expected, update));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronously removes the chain of the given hashed id, whatever its state.
+     * @param hid Hashed id.
+     * @return A future completed once the chain is removed.
+     */
+    default @NotNull CompletableFuture<Void> removeAsync(@NotNull String hid) {
+        try {
+            remove(hid);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Performs the given action for each stored chain.
+     * The iteration is weakly consistent, chains updated while iterating may be seen in either state.
+     * @param action Action taking the hashed id and its chain state.
+     */
+    void forEach(@NotNull BiConsumer<String, ChainState> action);
+
+    /**
+     * Gets the number of chains currently stored.
+     * @return Number of chains.
+     */
+    int size();
+
+    /**
+     * Gets the number of chains removed because they expired or the store was full.
+     * @return Number of evicted chains.
+     */
+    long evictionCount();
+
+}
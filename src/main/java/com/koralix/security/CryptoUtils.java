@@ -8,7 +8,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
@@ -19,6 +19,31 @@ import java.util.Base64;
  */
 public final class CryptoUtils {
 
+    private static final byte[] B64URL_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] B64URL_VALUES = new byte[128];
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final StripedPool<Mac> HMAC_SHA256 = new StripedPool<>(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final StripedPool<MessageDigest> SHA256 = new StripedPool<>(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    static {
+        Arrays.fill(B64URL_VALUES, (byte) -1);
+        for (int i = 0; i < B64URL_ALPHABET.length; i++) {
+            B64URL_VALUES[B64URL_ALPHABET[i]] = (byte) i;
+        }
+    }
+
     private CryptoUtils() {
         throw new AssertionError();
     }
@@ -41,8 +66,102 @@ public final class CryptoUtils {
         return Base64.getUrlDecoder().decode(data);
     }
 
+    /**
+     * Encodes the given region to Base64Url into the given buffer.
+     * @param src Buffer containing the data to encode.
+     * @param offset Offset of the data.
+     * @param length Length of the data.
+     * @param padding Whether to add the trailing '=' padding.
+     * @param dst Buffer where the ASCII encoded data is written, at least {@code (length + 2) / 3 * 4} bytes must be available.
+     * @param dstOffset Offset where the encoded data is written.
+     * @return Number of bytes written.
+     */
+    public static int b64encode(byte @NotNull [] src, int offset, int length, boolean padding, byte @NotNull [] dst, int dstOffset) {
+        if (dst.length - dstOffset < (length + 2) / 3 * 4) {
+            throw new IllegalArgumentException("Output buffer is too small for the encoded data.");
+        }
+
+        int out = dstOffset;
+        int end = offset + length - length % 3;
+        for (int i = offset; i < end; i += 3) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            dst[out++] = B64URL_ALPHABET[bits >>> 18];
+            dst[out++] = B64URL_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[out++] = B64URL_ALPHABET[(bits >>> 6) & 0x3F];
+            dst[out++] = B64URL_ALPHABET[bits & 0x3F];
+        }
+        int remaining = length % 3;
+        if (remaining > 0) {
+            int bits = (src[end] & 0xFF) << 16 | (remaining == 2 ? (src[end + 1] & 0xFF) << 8 : 0);
+            dst[out++] = B64URL_ALPHABET[bits >>> 18];
+            dst[out++] = B64URL_ALPHABET[(bits >>> 12) & 0x3F];
+            if (remaining == 2) {
+                dst[out++] = B64URL_ALPHABET[(bits >>> 6) & 0x3F];
+            }
+            if (padding) {
+                dst[out++] = '=';
+                if (remaining == 1) {
+                    dst[out++] = '=';
+                }
+            }
+        }
+        return out - dstOffset;
+    }
+
+    /**
+     * Decodes the given Base64Url region into the given buffer, padding is optional.
+     * @param src Buffer containing the ASCII encoded data.
+     * @param offset Offset of the encoded data.
+     * @param length Length of the encoded data.
+     * @param dst Buffer where the decoded data is written, at least {@code length * 3 / 4} bytes must be available.
+     * @param dstOffset Offset where the decoded data is written.
+     * @return Number of decoded bytes, or -1 if the region is not valid Base64Url.
+     */
+    public static int b64decode(byte @NotNull [] src, int offset, int length, byte @NotNull [] dst, int dstOffset) {
+        int end = offset + length;
+        int padding = 0;
+        while (end > offset && src[end - 1] == '=' && padding < 2) {
+            end--;
+            padding++;
+        }
+        int chars = end - offset;
+        if (chars % 4 == 1 || (padding > 0 && (chars + padding) % 4 != 0)) {
+            return -1;
+        }
+        if (dst.length - dstOffset < chars / 4 * 3 + Math.max(0, chars % 4 - 1)) {
+            throw new IllegalArgumentException("Output buffer is too small for the decoded data.");
+        }
+
+        int out = dstOffset;
+        int bits = 0;
+        int count = 0;
+        for (int i = offset; i < end; i++) {
+            int c = src[i] & 0xFF;
+            int value = c < B64URL_VALUES.length ? B64URL_VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            if (++count == 4) {
+                dst[out++] = (byte) (bits >> 16);
+                dst[out++] = (byte) (bits >> 8);
+                dst[out++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 2) {
+            dst[out++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            dst[out++] = (byte) (bits >> 10);
+            dst[out++] = (byte) (bits >> 2);
+        }
+        return out - dstOffset;
+    }
+
     /**
      * Generates the HMAC SHA256 signature for the given data.
+     * Use {@link Hmac} when signing many times with the same key.
      * @param key Key used to sign the data.
      * @param data Data to sign.
      * @return Token.
@@ -50,14 +169,18 @@ public final class CryptoUtils {
      * @throws InvalidKeyException If the key is invalid.
      */
     public static @NotNull String encode(@NotNull SecretKeySpec key, @NotNull String data) throws NoSuchAlgorithmException, InvalidKeyException {
-        Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-        sha256_HMAC.init(key);
-
-        return b64encode(sha256_HMAC.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+        Mac sha256_HMAC = HMAC_SHA256.acquire();
+        try {
+            sha256_HMAC.init(key);
+            return b64encode(sha256_HMAC.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            HMAC_SHA256.release(sha256_HMAC);
+        }
     }
 
     /**
      * Verifies the HMAC SHA256 signature for the given data.
+     * Use {@link Hmac} when verifying many times with the same key.
      * @param key Key used to sign the data.
      * @param data Data to sign.
      * @param signature Signature to verify.
@@ -68,10 +191,14 @@ public final class CryptoUtils {
     public static boolean verify(@NotNull SecretKeySpec key, @NotNull String data, @NotNull String signature) throws NoSuchAlgorithmException, InvalidKeyException {
         byte[] decodedSignature = b64decode(signature);
 
-        Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-        sha256_HMAC.init(key);
-
-        byte[] calculatedSignature = sha256_HMAC.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        byte[] calculatedSignature;
+        Mac sha256_HMAC = HMAC_SHA256.acquire();
+        try {
+            sha256_HMAC.init(key);
+            calculatedSignature = sha256_HMAC.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            HMAC_SHA256.release(sha256_HMAC);
+        }
 
         return MessageDigest.isEqual(decodedSignature, calculatedSignature);
     }
@@ -84,10 +211,14 @@ public final class CryptoUtils {
      * @throws NoSuchAlgorithmException If the algorithm is not supported.
      */
     public static @NotNull String sha256(byte @NotNull [] data, byte @NotNull [] salt) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        digest.reset();
-        digest.update(salt);
-        return b64encode(digest.digest(data));
+        MessageDigest digest = SHA256.acquire();
+        try {
+            digest.reset();
+            digest.update(salt);
+            return b64encode(digest.digest(data));
+        } finally {
+            SHA256.release(digest);
+        }
     }
 
     /**
@@ -96,14 +227,33 @@ public final class CryptoUtils {
      * @return Random hex string.
      */
     public static @NotNull String randomHex(int i) {
+        return randomHex(RandomSource.shared(), i);
+    }
+
+    /**
+     * Generates a random hex string of the given length in bytes.
+     * @param random Source of the random bytes.
+     * @param i Length of the string in bytes.
+     * @return Random hex string.
+     */
+    public static @NotNull String randomHex(@NotNull RandomSource random, int i) {
         byte[] bytes = new byte[i];
-        new SecureRandom().nextBytes(bytes);
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = String.format("%02x", b);
-            hexString.append(hex);
+        random.nextBytes(bytes);
+        return toHex(bytes);
+    }
+
+    /**
+     * Encodes the given data to a lowercase hex string.
+     * @param data Data to encode.
+     * @return Hex string.
+     */
+    public static @NotNull String toHex(byte @NotNull [] data) {
+        byte[] hex = new byte[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(data[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX_DIGITS[data[i] & 0x0F];
         }
-        return hexString.toString();
+        return new String(hex, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -111,6 +261,6 @@ public final class CryptoUtils {
      * @return Random long.
      */
     public static @NotNull Long randomLong() {
-        return new SecureRandom().nextLong();
+        return RandomSource.shared().nextLong();
     }
 }
@@ -0,0 +1,48 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default executors used when the caller does not provide one.
+ * On Java 21+ the multi-release JAR replaces this class with a virtual thread based one.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class DefaultExecutors {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private DefaultExecutors() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Creates an executor that runs each task in its own daemon thread, reusing idle threads.
+     * @return A new executor service.
+     */
+    static @NotNull ExecutorService newPerTaskExecutor() {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mc-simple-security-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a scheduler with a single daemon thread, that only hands delayed tasks over to other executors.
+     * @return A new scheduled executor service.
+     */
+    static @NotNull ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mc-simple-security-scheduler-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Profile returned by the Mojang session server when a client has joined.
+ *
+ * @param id The player's UUID.
+ * @param name The player's username.
+ * @param properties The profile properties, e.g. textures.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public record GameProfile(@NotNull UUID id, @NotNull String name, @NotNull List<Property> properties) {
+
+    /**
+     * Signed property of a profile.
+     *
+     * @param name Name of the property.
+     * @param value Base64 value of the property.
+     * @param signature Base64 signature of the value, if any.
+     */
+    public record Property(@NotNull String name, @NotNull String value, @Nullable String signature) {
+    }
+
+}
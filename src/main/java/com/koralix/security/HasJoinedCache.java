@@ -0,0 +1,129 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Short lived cache of the hasJoined profiles, keyed by username and server id.
+ * <p>
+ * Concurrent lookups of the same key share a single request (single-flight), and a successful profile is reused until
+ * its time to live elapses. Failed requests are not cached, the next lookup sends a new one. Every caller gets its own
+ * future, so cancelling one does not affect the others nor the shared request.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class HasJoinedCache {
+
+    /**
+     * Number of requests between two amortised sweeps.
+     */
+    static final int SWEEP_INTERVAL = 1024;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final LongAdder hits;
+    private final LongAdder coalesced;
+    private final LongAdder misses;
+
+    /**
+     * Creates a cache.
+     * @param ttl Time a successful profile is reused.
+     * @param metrics Metrics where the hit, coalesced and miss counters are registered.
+     */
+    HasJoinedCache(@NotNull Duration ttl, @NotNull Metrics metrics) {
+        this.ttlNanos = ttl.toNanos();
+        this.hits = metrics.counter("hasJoinedCache.hits");
+        this.coalesced = metrics.counter("hasJoinedCache.coalesced");
+        this.misses = metrics.counter("hasJoinedCache.misses");
+    }
+
+    /**
+     * Gets the profile of a join, from the cache, from a request already in flight, or from a new request.
+     * @param username Username of the client.
+     * @param serverId Server id of the join.
+     * @param request Sends a new request.
+     * @return A new future completed with the profile.
+     */
+    @NotNull CompletableFuture<GameProfile> get(@NotNull String username, @NotNull String serverId, @NotNull Supplier<CompletableFuture<GameProfile>> request) {
+        Key key = new Key(username, serverId);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.isExpired(System.nanoTime())) {
+            Entry created = new Entry();
+            entry = entries.compute(key, (k, current) -> current == null || current.isExpired(System.nanoTime()) ? created : current);
+            if (entry == created) {
+                misses.increment();
+                load(key, created, request);
+                return created.future.copy();
+            }
+        }
+
+        (entry.future.isDone() ? hits : coalesced).increment();
+        return entry.future.copy();
+    }
+
+    private void load(@NotNull Key key, @NotNull Entry entry, @NotNull Supplier<CompletableFuture<GameProfile>> request) {
+        if (requests.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep();
+        }
+
+        CompletableFuture<GameProfile> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            return;
+        }
+        response.whenComplete((profile, throwable) -> {
+            if (throwable != null) {
+                entries.remove(key, entry);
+                entry.future.completeExceptionally(throwable);
+            } else {
+                // The expiration is set before completing, so a completed entry is never seen without it.
+                entry.expiresAt = System.nanoTime() + ttlNanos;
+                entry.future.complete(profile);
+            }
+        });
+    }
+
+    /**
+     * Removes the expired profiles. Does nothing if another thread is already sweeping.
+     */
+    private void sweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long now = System.nanoTime();
+            entries.values().removeIf(entry -> entry.isExpired(now));
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private record Key(@NotNull String username, @NotNull String serverId) {
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<GameProfile> future = new CompletableFuture<>();
+        private volatile long expiresAt;
+
+        private boolean isExpired(long now) {
+            return future.isDone() && now - expiresAt >= 0;
+        }
+    }
+
+}
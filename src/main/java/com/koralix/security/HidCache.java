@@ -0,0 +1,124 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the hashed ids of {@link SimpleSecurityProvider#getHid(java.util.UUID)}, keyed by the two longs
+ * of the UUID.
+ * <p>
+ * The cache is set associative: a UUID can only be stored in the {@value #WAYS} slots of its set, and each set evicts
+ * with the CLOCK algorithm, skipping the entries that were read since the hand last passed them. Lookups never lock
+ * nor allocate. Concurrent misses of the same UUID may store it twice in its set, which only wastes a slot until it
+ * is evicted.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class HidCache {
+
+    static final int WAYS = 8;
+    static final int MAX_SIZE = 1 << 27;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final byte[] referenced;
+    private final byte[] hands;
+    private final int setMask;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Creates a cache.
+     * @param maxSize Maximum number of hashed ids, rounded up to a power of two multiple of {@value #WAYS}, at most
+     *                {@value #MAX_SIZE}.
+     * @param metrics Metrics where the hit, miss and eviction counters are registered.
+     */
+    HidCache(int maxSize, @NotNull Metrics metrics) {
+        int needed = Math.max(1, (maxSize + WAYS - 1) / WAYS);
+        int sets = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(sets * WAYS);
+        this.referenced = new byte[sets * WAYS];
+        this.hands = new byte[sets];
+        this.setMask = sets - 1;
+        this.hits = metrics.counter("hidCache.hits");
+        this.misses = metrics.counter("hidCache.misses");
+        this.evictions = metrics.counter("hidCache.evictions");
+    }
+
+    /**
+     * Gets the hashed id of a UUID.
+     * @param msb Most significant bits of the UUID.
+     * @param lsb Least significant bits of the UUID.
+     * @return The hashed id, or null if it is not cached.
+     */
+    @Nullable String get(long msb, long lsb) {
+        int base = set(msb, lsb) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            Entry entry = slots.getAcquire(i);
+            if (entry != null && entry.msb == msb && entry.lsb == lsb) {
+                // The reference bit is only a hint, a lost update just makes the entry easier to evict.
+                if (referenced[i] == 0) {
+                    referenced[i] = 1;
+                }
+                hits.increment();
+                return entry.hid;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the hashed id of a UUID, evicting an entry of its set if it is full.
+     * @param msb Most significant bits of the UUID.
+     * @param lsb Least significant bits of the UUID.
+     * @param hid Hashed id.
+     */
+    void put(long msb, long lsb, @NotNull String hid) {
+        int set = set(msb, lsb);
+        int base = set * WAYS;
+        Entry entry = new Entry(msb, lsb, hid);
+        for (int i = base; i < base + WAYS; i++) {
+            if (slots.getAcquire(i) == null && slots.compareAndExchangeRelease(i, null, entry) == null) {
+                return;
+            }
+        }
+
+        // Every way of the set is taken, move the hand until an entry that was not read since the last pass.
+        int hand = hands[set];
+        for (int step = 0; step < WAYS * 2; step++) {
+            int i = base + (hand & (WAYS - 1));
+            hand++;
+            if (referenced[i] != 0 && step < WAYS) {
+                referenced[i] = 0;
+                continue;
+            }
+            referenced[i] = 0;
+            slots.setRelease(i, entry);
+            break;
+        }
+        hands[set] = (byte) hand;
+        evictions.increment();
+    }
+
+    /**
+     * Gets the number of hashed ids the cache can hold.
+     * @return Capacity of the cache.
+     */
+    int capacity() {
+        return slots.length();
+    }
+
+    private int set(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & setMask;
+    }
+
+    private record Entry(long msb, long lsb, @NotNull String hid) {
+    }
+
+}
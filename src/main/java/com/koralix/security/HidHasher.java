@@ -0,0 +1,78 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static com.koralix.security.TokenParser.HID_LENGTH;
+import static com.koralix.security.TokenParser.LONG;
+
+/**
+ * Hashes UUIDs into hashed ids with a digest and buffers reused between calls, so an instance must only be used by
+ * one thread at a time.
+ * <p>
+ * The hashed id is the SHA-256 of the derived salt {@code salt, lsb, msb, lsb ^ msb ^ salt} followed by the UUID
+ * {@code lsb, msb}, as big endian longs. The salt is written once, each call only writes the UUID dependent longs
+ * and digests the 48 bytes, which fit in a single SHA-256 block.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class HidHasher {
+
+    private static final int MESSAGE_LENGTH = 6 * Long.BYTES;
+
+    private final MessageDigest digest;
+    private final long salt;
+    private final byte[] message = new byte[MESSAGE_LENGTH];
+    private final byte[] hash = new byte[HID_LENGTH];
+    private final byte[] encoded = new byte[(HID_LENGTH + 2) / 3 * 4];
+
+    /**
+     * Creates a hasher for the given salt.
+     * @param salt Salt of the provider.
+     * @throws NoSuchAlgorithmException If SHA-256 is not supported.
+     */
+    HidHasher(long salt) throws NoSuchAlgorithmException {
+        this.digest = MessageDigest.getInstance("SHA-256");
+        this.salt = salt;
+        LONG.set(message, 0, salt);
+    }
+
+    /**
+     * Hashes a UUID into the given buffer.
+     * @param msb Most significant bits of the UUID.
+     * @param lsb Least significant bits of the UUID.
+     * @param dst Buffer where the {@value TokenParser#HID_LENGTH} bytes of the hashed id are written.
+     * @param offset Offset where the hashed id is written.
+     */
+    void hash(long msb, long lsb, byte @NotNull [] dst, int offset) {
+        LONG.set(message, 8, lsb);
+        LONG.set(message, 16, msb);
+        LONG.set(message, 24, lsb ^ msb ^ salt);
+        LONG.set(message, 32, lsb);
+        LONG.set(message, 40, msb);
+        digest.update(message, 0, MESSAGE_LENGTH);
+        try {
+            digest.digest(dst, offset, HID_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Hashes a UUID into its Base64Url encoded hashed id, only the returned string is allocated.
+     * @param msb Most significant bits of the UUID.
+     * @param lsb Least significant bits of the UUID.
+     * @return The hashed id.
+     */
+    @NotNull String hash(long msb, long lsb) {
+        hash(msb, lsb, hash, 0);
+        int length = CryptoUtils.b64encode(hash, 0, HID_LENGTH, true, encoded, 0);
+        return new String(encoded, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+}
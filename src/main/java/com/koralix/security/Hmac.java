@@ -0,0 +1,251 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * HMAC bound to a single key.
+ * The {@link Mac}s initialised with the key are kept in a {@link StripedPool} shared by the threads, so signing does not
+ * look up the algorithm or process the key again, also when every task runs in a new virtual thread.
+ * The byte oriented methods work on caller supplied regions and do not allocate.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class Hmac {
+
+    /**
+     * Length in bytes of an HMAC SHA256 signature.
+     */
+    public static final int LENGTH = 32;
+    /**
+     * Minimum length in bytes accepted for a truncated signature.
+     */
+    public static final int MIN_TRUNCATED_LENGTH = 16;
+
+    private final StripedPool<State> states;
+
+    private Hmac(@NotNull SecretKeySpec key) throws NoSuchAlgorithmException, InvalidKeyException {
+        State first = new State(newMac(key));
+        this.states = new StripedPool<>(() -> {
+            try {
+                return new State(newMac(key));
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        states.release(first);
+    }
+
+    /**
+     * Creates a new HMAC SHA256 for the given key.
+     * @param key Key used to sign the data.
+     * @return A new HMAC.
+     * @throws NoSuchAlgorithmException If the algorithm is not supported.
+     * @throws InvalidKeyException If the key is invalid.
+     */
+    public static @NotNull Hmac sha256(@NotNull SecretKeySpec key) throws NoSuchAlgorithmException, InvalidKeyException {
+        return new Hmac(key);
+    }
+
+    /**
+     * Generates the signature for the given data.
+     * @param data Data to sign.
+     * @return Base64Url signature.
+     */
+    public @NotNull String encode(@NotNull String data) {
+        State state = acquire();
+        try {
+            return CryptoUtils.b64encode(state.mac.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            states.release(state);
+        }
+    }
+
+    /**
+     * Verifies the signature for the given data.
+     * @param data Data to sign.
+     * @param signature Base64Url signature to verify.
+     * @return True if the signature is valid, false otherwise.
+     */
+    public boolean verify(@NotNull String data, @NotNull String signature) {
+        byte[] decodedSignature = CryptoUtils.b64decode(signature);
+        byte[] calculatedSignature;
+        State state = acquire();
+        try {
+            calculatedSignature = state.mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            states.release(state);
+        }
+
+        return MessageDigest.isEqual(decodedSignature, calculatedSignature);
+    }
+
+    /**
+     * Writes the signature of the given data region into the given buffer.
+     * @param data Buffer containing the data to sign.
+     * @param offset Offset of the data.
+     * @param length Length of the data.
+     * @param out Buffer where the signature is written.
+     * @param outOffset Offset where the signature is written, {@link #LENGTH} bytes must be available.
+     * @return Number of bytes written.
+     */
+    public int sign(byte @NotNull [] data, int offset, int length, byte @NotNull [] out, int outOffset) {
+        if (outOffset < 0 || out.length - outOffset < LENGTH) {
+            throw new IllegalArgumentException("Output buffer is too small for the signature.");
+        }
+
+        State state = acquire();
+        try {
+            state.sign(data, offset, length, out, outOffset);
+        } finally {
+            states.release(state);
+        }
+        return LENGTH;
+    }
+
+    /**
+     * Writes the signature of the remaining bytes of the data buffer into the output buffer.
+     * The position of the data buffer is moved to its limit and the position of the output buffer is moved after the signature.
+     * @param data Data to sign.
+     * @param out Buffer where the signature is written, {@link #LENGTH} bytes must be remaining.
+     */
+    public void sign(@NotNull ByteBuffer data, @NotNull ByteBuffer out) {
+        if (out.remaining() < LENGTH) {
+            throw new IllegalArgumentException("Output buffer is too small for the signature.");
+        }
+
+        State state = acquire();
+        try {
+            out.put(state.sign(data));
+        } finally {
+            states.release(state);
+        }
+    }
+
+    /**
+     * Verifies the signature of the given data region against a raw signature region, in constant time.
+     * A signature shorter than {@link #LENGTH} is compared as a truncated signature, i.e. against the leading bytes
+     * of the computed one, and must be at least {@link #MIN_TRUNCATED_LENGTH} bytes long.
+     * @param data Buffer containing the signed data.
+     * @param offset Offset of the data.
+     * @param length Length of the data.
+     * @param signature Buffer containing the raw signature.
+     * @param signatureOffset Offset of the signature.
+     * @param signatureLength Length of the signature.
+     * @return True if the signature is valid, false otherwise.
+     */
+    public boolean verify(byte @NotNull [] data, int offset, int length, byte @NotNull [] signature, int signatureOffset, int signatureLength) {
+        if (signatureLength < MIN_TRUNCATED_LENGTH || signatureLength > LENGTH) {
+            return false;
+        }
+
+        State state = acquire();
+        try {
+            state.sign(data, offset, length, state.signature, 0);
+            return isEqual(state.signature, signature, signatureOffset, signatureLength);
+        } finally {
+            states.release(state);
+        }
+    }
+
+    /**
+     * Verifies the signature of the remaining bytes of the data buffer against the remaining bytes of the signature buffer,
+     * in constant time. The positions of both buffers are moved to their limits.
+     * As with the array variant, a signature shorter than {@link #LENGTH} is compared as a truncated signature and must be
+     * at least {@link #MIN_TRUNCATED_LENGTH} bytes long.
+     * @param data Signed data.
+     * @param signature Raw signature.
+     * @return True if the signature is valid, false otherwise.
+     */
+    public boolean verify(@NotNull ByteBuffer data, @NotNull ByteBuffer signature) {
+        State state = acquire();
+        try {
+            byte[] expected = state.sign(data);
+            int signatureLength = signature.remaining();
+            if (signatureLength < MIN_TRUNCATED_LENGTH || signatureLength > LENGTH) {
+                signature.position(signature.limit());
+                return false;
+            }
+
+            int result = 0;
+            for (int i = 0; i < signatureLength; i++) {
+                result |= expected[i] ^ signature.get();
+            }
+            return result == 0;
+        } finally {
+            states.release(state);
+        }
+    }
+
+    private static boolean isEqual(byte @NotNull [] expected, byte @NotNull [] actual, int offset, int length) {
+        if (offset < 0 || actual.length - offset < length) {
+            return false;
+        }
+
+        int result = 0;
+        for (int i = 0; i < length; i++) {
+            result |= expected[i] ^ actual[offset + i];
+        }
+        return result == 0;
+    }
+
+    /**
+     * Takes a state from the pool, discarding any data left in its Mac by an interrupted operation.
+     */
+    private @NotNull State acquire() {
+        State state = states.acquire();
+        state.mac.reset();
+        return state;
+    }
+
+    private static @NotNull Mac newMac(@NotNull SecretKeySpec key) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return mac;
+    }
+
+    /**
+     * Pooled state, the initialised Mac and a scratch buffer for the computed signatures.
+     */
+    private static final class State {
+
+        private final Mac mac;
+        private final byte[] signature = new byte[LENGTH];
+
+        private State(@NotNull Mac mac) {
+            this.mac = mac;
+        }
+
+        private void sign(byte @NotNull [] data, int offset, int length, byte @NotNull [] out, int outOffset) {
+            mac.update(data, offset, length);
+            try {
+                mac.doFinal(out, outOffset);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Signs the remaining bytes of the data buffer into the scratch buffer.
+         */
+        private byte @NotNull [] sign(@NotNull ByteBuffer data) {
+            mac.update(data);
+            try {
+                mac.doFinal(signature, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            return signature;
+        }
+    }
+
+}
@@ -0,0 +1,529 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * {@link ChainStore} that persists the chains of another store, so restarting the server does not break the tokens.
+ * <p>
+ * Every update is appended to a memory mapped journal in the given directory. When a journal is full, a new one is
+ * started and a snapshot of the whole store is written in the background, after which the older journals are deleted.
+ * Opening the store loads the latest snapshot and replays the journals written after it.
+ * <p>
+ * Updates are written to the journal in the same order they are applied, so they are serialized by a lock; reads go
+ * straight to the underlying store. Journal writes survive a crash of the process, {@link #flush()} also makes them
+ * survive a crash of the system. Chains evicted by the underlying store are not journaled, so they may come back after
+ * a restart until they expire again.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class JournaledChainStore implements ChainStore, AutoCloseable {
+
+    /**
+     * Default size of each journal file, in bytes.
+     */
+    public static final int DEFAULT_JOURNAL_SIZE = 64 << 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournaledChainStore.class);
+    private static final String SNAPSHOT_FILE = "chains.snapshot";
+    private static final String JOURNAL_PREFIX = "chains-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int SNAPSHOT_MAGIC = 0x4D435353;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte SET = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES + Integer.BYTES;
+    private static final int STATE_LENGTH = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int MAX_HID_LENGTH = Short.MAX_VALUE;
+
+    private final ChainStore delegate;
+    private final Path directory;
+    private final int journalSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final ExecutorService snapshotExecutor = DefaultExecutors.newPerTaskExecutor();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private Journal journal;
+    private long snapshotGeneration;
+    private boolean closed;
+
+    private JournaledChainStore(@NotNull ChainStore delegate, @NotNull Path directory, int journalSize) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.journalSize = journalSize;
+    }
+
+    /**
+     * Opens the journal in the given directory with the {@link #DEFAULT_JOURNAL_SIZE default journal size},
+     * loading the stored chains into the given store.
+     * @param directory Directory of the snapshot and the journals, created if it does not exist.
+     * @param delegate Store holding the chains in memory, usually empty.
+     * @return The journaled store.
+     * @throws IOException If the directory can not be read or written, or the snapshot is corrupted.
+     */
+    public static @NotNull JournaledChainStore open(@NotNull Path directory, @NotNull ChainStore delegate) throws IOException {
+        return open(directory, delegate, DEFAULT_JOURNAL_SIZE);
+    }
+
+    /**
+     * Opens the journal in the given directory, loading the stored chains into the given store.
+     * @param directory Directory of the snapshot and the journals, created if it does not exist.
+     * @param delegate Store holding the chains in memory, usually empty.
+     * @param journalSize Size of each journal file in bytes, a snapshot is written each time one is full.
+     * @return The journaled store.
+     * @throws IOException If the directory can not be read or written, or the snapshot is corrupted.
+     */
+    public static @NotNull JournaledChainStore open(@NotNull Path directory, @NotNull ChainStore delegate, int journalSize) throws IOException {
+        if (journalSize < 4096) {
+            throw new IllegalArgumentException("journalSize must be at least 4096 bytes.");
+        }
+
+        Files.createDirectories(directory);
+        JournaledChainStore store = new JournaledChainStore(delegate, directory, journalSize);
+        long generation = store.loadSnapshot();
+        store.snapshotGeneration = generation;
+
+        boolean replayed = false;
+        for (long journalGeneration : journalGenerations(directory)) {
+            Path file = journalFile(directory, journalGeneration);
+            if (journalGeneration < generation) {
+                Files.deleteIfExists(file);
+            } else {
+                store.replay(file);
+                generation = journalGeneration + 1;
+                replayed = true;
+            }
+        }
+
+        store.journal = new Journal(directory, generation, journalSize);
+        if (replayed) {
+            // Everything from now on goes to the new journal, so the replayed ones can be compacted.
+            store.scheduleSnapshot(generation);
+        }
+        return store;
+    }
+
+    @Override
+    public @Nullable ChainState get(@NotNull String hid) {
+        return delegate.get(hid);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<@Nullable ChainState> getAsync(@NotNull String hid) {
+        return delegate.getAsync(hid);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<@Nullable ChainState>> getAllAsync(@NotNull List<String> hids) {
+        return delegate.getAllAsync(hids);
+    }
+
+    @Override
+    public boolean compareAndSet(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (expected == null && update == null) {
+                return delegate.compareAndSet(hid, null, null);
+            }
+            // The record is prepared first, so a chain that can not be journaled is never updated.
+            int length = prepare(hid, update);
+            if (!delegate.compareAndSet(hid, expected, update)) {
+                return false;
+            }
+            append(length);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(@NotNull String hid) {
+        lock.lock();
+        try {
+            ensureOpen();
+            int length = prepare(hid, null);
+            delegate.remove(hid);
+            append(length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(@NotNull BiConsumer<String, ChainState> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long evictionCount() {
+        return delegate.evictionCount();
+    }
+
+    /**
+     * Forces the journal to the storage device.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            ensureOpen();
+            journal.buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new journal and writes a snapshot of the store, deleting the older journals.
+     * @throws IOException If the snapshot can not be written.
+     */
+    public void snapshot() throws IOException {
+        long generation;
+        lock.lock();
+        try {
+            ensureOpen();
+            generation = rotate();
+        } finally {
+            lock.unlock();
+        }
+        writeSnapshot(generation);
+    }
+
+    /**
+     * Closes the journal, waiting for the running snapshot.
+     * The underlying store is left untouched.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The chain store is closed.");
+        }
+    }
+
+    /**
+     * Encodes an update and makes room for it in the journal, the lock must be held.
+     * Nothing is written yet, so the update can still be dropped.
+     * @param state New state, or null if the chain was removed.
+     * @return The length of the record, to be written with {@link #append(int)}.
+     * @throws IllegalArgumentException If the record does not fit in a journal.
+     */
+    private int prepare(@NotNull String hid, @Nullable ChainState state) {
+        byte[] hidBytes = hid.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Short.BYTES + hidBytes.length + (state == null ? 0 : STATE_LENGTH);
+        // The next record header must fit too, as a zero length marks the end of the journal.
+        if (hidBytes.length > MAX_HID_LENGTH || RECORD_HEADER_LENGTH + length + Integer.BYTES > journalSize) {
+            throw new IllegalArgumentException("The hid is too long to be journaled.");
+        }
+        if (record.capacity() < length) {
+            record = ByteBuffer.allocate(length);
+        }
+
+        record.clear();
+        record.put(state == null ? REMOVE : SET).putShort((short) hidBytes.length).put(hidBytes);
+        if (state != null) {
+            record.putLong(state.chainId()).putLong(state.creationSeconds()).putInt(state.creationNanos());
+        }
+        record.flip();
+        crc.reset();
+        crc.update(record);
+        record.flip();
+
+        if (journal.position + RECORD_HEADER_LENGTH + length + Integer.BYTES > journalSize) {
+            try {
+                scheduleSnapshot(rotate());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Appends the record prepared by {@link #prepare(String, ChainState)} to the journal, the lock must be held.
+     */
+    private void append(int length) {
+        MappedByteBuffer buffer = journal.buffer;
+        int position = journal.position;
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.put(position + RECORD_HEADER_LENGTH, record, 0, length);
+        // The length is written last, so a torn record is never read.
+        buffer.putInt(position, length);
+        journal.position = position + RECORD_HEADER_LENGTH + length;
+    }
+
+    /**
+     * Closes the current journal and starts the next one, the lock must be held.
+     * @return The generation of the new journal.
+     */
+    private long rotate() throws IOException {
+        long generation = journal.generation + 1;
+        Journal next = new Journal(directory, generation, journalSize);
+        journal.close();
+        journal = next;
+        return generation;
+    }
+
+    private void scheduleSnapshot(long generation) {
+        snapshotExecutor.execute(() -> {
+            try {
+                writeSnapshot(generation);
+            } catch (IOException e) {
+                LOGGER.error("Could not write the chain snapshot, the journals will be kept", e);
+            }
+        });
+    }
+
+    /**
+     * Writes a snapshot of the store and deletes the journals older than the given generation.
+     * The updates made while writing are also in the journal of the given generation, so replaying it after the
+     * snapshot gives the latest state whichever state of those chains was written.
+     */
+    private void writeSnapshot(long generation) throws IOException {
+        snapshotLock.lock();
+        try {
+            if (generation <= snapshotGeneration) {
+                return;
+            }
+
+            Path snapshot = directory.resolve(SNAPSHOT_FILE);
+            Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32C checksum = new CRC32C();
+                BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, checksum));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(generation);
+                long[] count = new long[1];
+                try {
+                    delegate.forEach((hid, state) -> {
+                        byte[] hidBytes = hid.getBytes(StandardCharsets.UTF_8);
+                        if (hidBytes.length > MAX_HID_LENGTH) {
+                            return;
+                        }
+                        try {
+                            out.writeShort(hidBytes.length);
+                            out.write(hidBytes);
+                            out.writeLong(state.chainId());
+                            out.writeLong(state.creationSeconds());
+                            out.writeInt(state.creationNanos());
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                        count[0]++;
+                    });
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof IOException cause) {
+                        throw cause;
+                    }
+                    throw e;
+                }
+                out.writeShort(-1);
+                out.writeLong(count[0]);
+                out.flush();
+                // The checksum is written past the checked stream, it is not part of itself.
+                buffered.write(ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).array());
+                buffered.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            snapshotGeneration = generation;
+
+            for (long journalGeneration : journalGenerations(directory)) {
+                if (journalGeneration < generation) {
+                    Files.deleteIfExists(journalFile(directory, journalGeneration));
+                }
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Loads the snapshot into the underlying store.
+     * @return The generation of the first journal to replay after the snapshot.
+     */
+    private long loadSnapshot() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The chain snapshot is too large.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < Integer.BYTES * 2 + Long.BYTES + Short.BYTES + Long.BYTES + Integer.BYTES) {
+                throw new IOException("The chain snapshot is corrupted.");
+            }
+
+            int checksumOffset = (int) size - Integer.BYTES;
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.slice(0, checksumOffset));
+            if ((int) checksum.getValue() != buffer.getInt(checksumOffset) ||
+                    buffer.getInt(0) != SNAPSHOT_MAGIC || buffer.getInt(Integer.BYTES) != SNAPSHOT_VERSION) {
+                throw new IOException("The chain snapshot is corrupted.");
+            }
+
+            long generation = buffer.getLong(Integer.BYTES * 2);
+            byte[] hidBytes = new byte[MAX_HID_LENGTH];
+            buffer.position(Integer.BYTES * 2 + Long.BYTES);
+            while (true) {
+                short hidLength = buffer.getShort();
+                if (hidLength < 0) {
+                    break;
+                }
+                buffer.get(hidBytes, 0, hidLength);
+                String hid = new String(hidBytes, 0, hidLength, StandardCharsets.UTF_8);
+                delegate.compareAndSet(hid, null, new ChainState(buffer.getLong(), buffer.getLong(), buffer.getInt()));
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * Applies the records of a journal to the underlying store, stopping at the first incomplete one.
+     */
+    private void replay(@NotNull Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C checksum = new CRC32C();
+            byte[] hidBytes = new byte[MAX_HID_LENGTH];
+            int position = 0;
+            while (position + RECORD_HEADER_LENGTH <= size) {
+                int length = buffer.getInt(position);
+                int start = position + RECORD_HEADER_LENGTH;
+                if (length < 1 + Short.BYTES || length > size - start) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(buffer.slice(start, length));
+                if ((int) checksum.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                    break;
+                }
+
+                byte type = buffer.get(start);
+                int hidLength = buffer.getShort(start + 1);
+                if (hidLength < 0 || 1 + Short.BYTES + hidLength + (type == SET ? STATE_LENGTH : 0) != length) {
+                    break;
+                }
+                buffer.get(start + 1 + Short.BYTES, hidBytes, 0, hidLength);
+                String hid = new String(hidBytes, 0, hidLength, StandardCharsets.UTF_8);
+                if (type == SET) {
+                    int offset = start + 1 + Short.BYTES + hidLength;
+                    ChainState state = new ChainState(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES), buffer.getInt(offset + Long.BYTES * 2));
+                    ChainState current;
+                    do {
+                        current = delegate.get(hid);
+                    } while (!delegate.compareAndSet(hid, current, state));
+                } else if (type == REMOVE) {
+                    delegate.remove(hid);
+                } else {
+                    break;
+                }
+                position = start + length;
+            }
+        }
+    }
+
+    private static @NotNull List<Long> journalGenerations(@NotNull Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX)) {
+                    try {
+                        generations.add(Long.parseLong(name, JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length(), 10));
+                    } catch (NumberFormatException ignored) {
+                        // Not one of our journals.
+                    }
+                }
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    private static @NotNull Path journalFile(@NotNull Path directory, long generation) {
+        return directory.resolve(JOURNAL_PREFIX + generation + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Journal file being written.
+     */
+    private static final class Journal {
+
+        private final long generation;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+
+        private Journal(@NotNull Path directory, long generation, int size) throws IOException {
+            this.generation = generation;
+            this.channel = FileChannel.open(journalFile(directory, generation), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        private void close() throws IOException {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+}
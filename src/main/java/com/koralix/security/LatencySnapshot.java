@@ -0,0 +1,17 @@
+package com.koralix.security;
+
+/**
+ * Latencies recorded by a histogram, in nanoseconds. Percentiles are accurate to 3.2%.
+ *
+ * @param count Number of recorded latencies.
+ * @param meanNanos Mean latency.
+ * @param p50Nanos Median latency.
+ * @param p90Nanos 90th percentile.
+ * @param p99Nanos 99th percentile.
+ * @param p999Nanos 99.9th percentile.
+ * @param maxNanos Maximum latency.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public record LatencySnapshot(long count, double meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+}
@@ -0,0 +1,181 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * In memory {@link ChainStore} with a time to live and a maximum size.
+ * Chains whose latest token is older than the time to live are removed by {@link #sweep()}, which runs
+ * every {@value #SWEEP_INTERVAL} updates and can also be scheduled by the caller.
+ * When a new chain exceeds the maximum size, the store evicts the oldest of {@value #EVICTION_SAMPLES} chains sampled
+ * from where the previous eviction stopped, so the cost of an eviction does not grow with the size of the store.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class MemoryChainStore implements ChainStore {
+
+    /**
+     * Number of updates between two amortised sweeps.
+     */
+    static final int SWEEP_INTERVAL = 1024;
+    /**
+     * Number of chains compared on each eviction.
+     */
+    static final int EVICTION_SAMPLES = 8;
+
+    private final Map<String, ChainState> states = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlSeconds;
+    private final AtomicInteger updates = new AtomicInteger();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final LongAdder evictions = new LongAdder();
+    private final Object evictionLock = new Object();
+    private @Nullable Iterator<Map.Entry<String, ChainState>> evictionHand;
+
+    /**
+     * Creates a new store.
+     * @param maxSize Maximum number of chains.
+     * @param ttl Time after the latest token of a chain when the chain is removed, or null to keep chains until evicted.
+     */
+    public MemoryChainStore(int maxSize, @Nullable Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+        if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+            throw new IllegalArgumentException("ttl must be positive.");
+        }
+        this.maxSize = maxSize;
+        this.ttlSeconds = ttl == null ? 0 : ttl.getSeconds();
+    }
+
+    /**
+     * Creates a new unbounded store without time to live.
+     */
+    public MemoryChainStore() {
+        this(Integer.MAX_VALUE, null);
+    }
+
+    @Override
+    public @Nullable ChainState get(@NotNull String hid) {
+        return states.get(hid);
+    }
+
+    @Override
+    public boolean compareAndSet(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+        boolean replaced;
+        if (expected == null) {
+            replaced = update == null ? !states.containsKey(hid) : states.putIfAbsent(hid, update) == null;
+            if (replaced && update != null && states.size() > maxSize) {
+                evictToMaxSize(hid);
+            }
+        } else if (update == null) {
+            replaced = states.remove(hid, expected);
+        } else {
+            replaced = states.replace(hid, expected, update);
+        }
+
+        if (replaced && update != null && updates.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep();
+        }
+        return replaced;
+    }
+
+    @Override
+    public void remove(@NotNull String hid) {
+        states.remove(hid);
+    }
+
+    @Override
+    public void forEach(@NotNull BiConsumer<String, ChainState> action) {
+        states.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return states.size();
+    }
+
+    @Override
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Removes the expired chains. Does nothing if another thread is already sweeping.
+     */
+    public void sweep() {
+        if (ttlSeconds == 0 || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long limit = System.currentTimeMillis() / 1000 - ttlSeconds;
+            for (Map.Entry<String, ChainState> entry : states.entrySet()) {
+                // Only the state that was checked is removed, a chain rotated meanwhile is kept.
+                if (entry.getValue().creationSeconds() < limit && states.remove(entry.getKey(), entry.getValue())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Evicts chains other than the given one until the store fits its maximum size. Each eviction removes the oldest
+     * of the next {@value #EVICTION_SAMPLES} chains of a hand that walks the whole store over successive evictions.
+     */
+    private void evictToMaxSize(@NotNull String keep) {
+        synchronized (evictionLock) {
+            while (states.size() > maxSize) {
+                Map.Entry<String, ChainState> oldest = null;
+                for (int i = 0; i < EVICTION_SAMPLES; i++) {
+                    Map.Entry<String, ChainState> entry = nextEvictionCandidate();
+                    if (entry == null) {
+                        break;
+                    }
+                    if (!entry.getKey().equals(keep) && (oldest == null || isOlder(entry.getValue(), oldest.getValue()))) {
+                        oldest = entry;
+                    }
+                }
+                if (oldest == null) {
+                    return;
+                }
+                if (states.remove(oldest.getKey(), oldest.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the eviction hand to the next chain, starting over at the end of the store.
+     * @return The next chain, or null if the store is empty.
+     */
+    private @Nullable Map.Entry<String, ChainState> nextEvictionCandidate() {
+        Iterator<Map.Entry<String, ChainState>> hand = evictionHand;
+        if (hand == null || !hand.hasNext()) {
+            hand = evictionHand = states.entrySet().iterator();
+            if (!hand.hasNext()) {
+                return null;
+            }
+        }
+        return hand.next();
+    }
+
+    private static boolean isOlder(@NotNull ChainState state, @NotNull ChainState than) {
+        return state.creationSeconds() < than.creationSeconds() ||
+                state.creationSeconds() == than.creationSeconds() && state.creationNanos() < than.creationNanos();
+    }
+
+}
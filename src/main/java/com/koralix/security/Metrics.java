@@ -0,0 +1,188 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a component, cheap enough to be updated on every call.
+ * All the metrics are registered when the component is created, read them with {@link #snapshot()} or through JMX
+ * with {@link #registerMBean(ObjectName)}.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class Metrics {
+
+    private static final String[] LATENCY_ATTRIBUTES = {"count", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos", "maxNanos"};
+
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+    Metrics() {
+    }
+
+    /**
+     * Registers a counter.
+     * @param name Name of the counter.
+     * @return The new counter.
+     */
+    @NotNull LongAdder counter(@NotNull String name) {
+        LongAdder counter = new LongAdder();
+        if (counters.putIfAbsent(name, counter) != null) {
+            throw new IllegalArgumentException("Duplicated counter " + name + ".");
+        }
+        return counter;
+    }
+
+    /**
+     * Registers a latency histogram.
+     * @param name Name of the histogram.
+     * @return The new histogram.
+     */
+    @NotNull LatencyHistogram latency(@NotNull String name) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        if (latencies.putIfAbsent(name, histogram) != null) {
+            throw new IllegalArgumentException("Duplicated latency " + name + ".");
+        }
+        return histogram;
+    }
+
+    /**
+     * Takes a snapshot of all the metrics.
+     * @return A new snapshot.
+     */
+    public @NotNull MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        Map<String, LatencySnapshot> latencyValues = new LinkedHashMap<>();
+        latencies.forEach((name, histogram) -> latencyValues.put(name, histogram.snapshot()));
+        return new MetricsSnapshot(Collections.unmodifiableMap(counterValues), Collections.unmodifiableMap(latencyValues));
+    }
+
+    /**
+     * Registers the metrics as an MBean of the platform MBean server.
+     * Each counter is a read-only attribute, and each latency histogram has the attributes {@code <name>.count},
+     * {@code <name>.meanNanos}, {@code <name>.p50Nanos}, {@code <name>.p90Nanos}, {@code <name>.p99Nanos},
+     * {@code <name>.p999Nanos} and {@code <name>.maxNanos}.
+     * @param name Object name of the MBean, e.g. {@code com.koralix.security:type=SimpleSecurityProvider}.
+     */
+    public void registerMBean(@NotNull ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Unregisters an MBean registered with {@link #registerMBean(ObjectName)}, nothing happens if it is not registered.
+     * @param name Object name of the MBean.
+     */
+    public void unregisterMBean(@NotNull ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (InstanceNotFoundException ignored) {
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read-only view of the metrics, the attributes are fixed when the MBean is registered.
+     */
+    private final class MetricsMBean implements DynamicMBean {
+
+        private final MBeanInfo info;
+
+        private MetricsMBean() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : counters.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "Counter " + name, true, false, false));
+            }
+            for (String name : latencies.keySet()) {
+                for (String attribute : LATENCY_ATTRIBUTES) {
+                    String type = attribute.equals("meanNanos") ? "double" : "long";
+                    attributes.add(new MBeanAttributeInfo(name + "." + attribute, type, "Latency " + name, true, false, false));
+                }
+            }
+            this.info = new MBeanInfo(Metrics.class.getName(), "Metrics",
+                    attributes.toArray(MBeanAttributeInfo[]::new), null, null, null);
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongAdder counter = counters.get(attribute);
+            if (counter != null) {
+                return counter.sum();
+            }
+
+            int dot = attribute.lastIndexOf('.');
+            LatencyHistogram histogram = dot < 0 ? null : latencies.get(attribute.substring(0, dot));
+            if (histogram == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            LatencySnapshot snapshot = histogram.snapshot();
+            return switch (attribute.substring(dot + 1)) {
+                case "count" -> snapshot.count();
+                case "meanNanos" -> snapshot.meanNanos();
+                case "p50Nanos" -> snapshot.p50Nanos();
+                case "p90Nanos" -> snapshot.p90Nanos();
+                case "p99Nanos" -> snapshot.p99Nanos();
+                case "p999Nanos" -> snapshot.p999Nanos();
+                case "maxNanos" -> snapshot.maxNanos();
+                default -> throw new AttributeNotFoundException(attribute);
+            };
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ignored) {
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only.");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Metrics have no operations.");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Point in time copy of the {@link Metrics metrics} of a component.
+ *
+ * @param counters Counters by name, in registration order.
+ * @param latencies Latency histograms by name, in registration order.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public record MetricsSnapshot(@NotNull Map<String, Long> counters, @NotNull Map<String, LatencySnapshot> latencies) {
+
+    /**
+     * Gets the value of a counter.
+     * @param name Name of the counter.
+     * @return Value of the counter, 0 if there is no counter with that name.
+     */
+    public long counter(@NotNull String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Gets a latency histogram.
+     * @param name Name of the histogram.
+     * @return The latencies, or null if there is no histogram with that name.
+     */
+    public @Nullable LatencySnapshot latency(@NotNull String name) {
+        return latencies.get(name);
+    }
+
+}
@@ -1,33 +1,89 @@
 package com.koralix.security;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Handler to communicate with Mojang Session Services.
+ * Each instance owns a pooled HTTP client that is shared by all its requests, call {@link #close()} to release it.
  *
  * @since 1.0.0
  * @author JohanVonElectrum
  */
-public final class MinecraftAPI {
+public final class MinecraftAPI implements AutoCloseable {
+
+    /**
+     * Base URL of the Mojang session server.
+     */
+    public static final String DEFAULT_SESSION_SERVER = "https://sessionserver.mojang.com";
 
     private final ExecutorService executorService;
     private final @Nullable SimpleSecurityProvider securityProvider;
     private final boolean isServer;
+    private final OkHttpClient client;
+    private final Transport transport;
+    private final boolean ownsExecutorService;
+    private final RandomSource randomSource;
+    private final HttpUrl joinUrl;
+    private final HttpUrl hasJoinedUrl;
+    private final Metrics metrics = new Metrics();
+    private final Endpoint joinEndpoint = new Endpoint(metrics, "join");
+    private final Endpoint hasJoinedEndpoint = new Endpoint(metrics, "hasJoined");
+    private final @Nullable HasJoinedCache hasJoinedCache;
+    private final RetryPolicy retryPolicy;
+    private final @Nullable ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
 
-    private MinecraftAPI(@NotNull ExecutorService executorService, @Nullable SimpleSecurityProvider securityProvider, boolean isServer) {
+    private MinecraftAPI(@NotNull ExecutorService executorService, @Nullable SimpleSecurityProvider securityProvider, boolean isServer, @NotNull OkHttpClient client, @NotNull Transport transport, boolean ownsExecutorService, @NotNull RandomSource randomSource, @NotNull HttpUrl sessionServer, @Nullable Duration hasJoinedCacheTtl, @NotNull RetryPolicy retryPolicy, @Nullable ScheduledExecutorService scheduler, boolean ownsScheduler) {
         this.executorService = executorService;
         this.securityProvider = securityProvider;
         this.isServer = isServer;
+        this.client = client;
+        this.transport = transport;
+        this.ownsExecutorService = ownsExecutorService;
+        this.randomSource = randomSource;
+        this.joinUrl = sessionServer.newBuilder().addPathSegments("session/minecraft/join").build();
+        this.hasJoinedUrl = sessionServer.newBuilder().addPathSegments("session/minecraft/hasJoined").build();
+        this.hasJoinedCache = hasJoinedCacheTtl != null ? new HasJoinedCache(hasJoinedCacheTtl, metrics) : null;
+        this.retryPolicy = retryPolicy;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Creates a new MinecraftAPI instance for a client.
+     * Async operations run on an executor owned by the instance, using virtual threads on Java 21+.
+     * @return A new MinecraftAPI instance.
+     */
+    public static @NotNull MinecraftAPI client() {
+        return builder().client();
     }
 
     /**
@@ -36,7 +92,7 @@ public final class MinecraftAPI {
      * @return A new MinecraftAPI instance.
      */
     public static @NotNull MinecraftAPI client(@NotNull ExecutorService executorService) {
-        return new MinecraftAPI(executorService, null, false);
+        return builder().executorService(executorService).client();
     }
 
     /**
@@ -46,7 +102,38 @@ public final class MinecraftAPI {
      * @return A new MinecraftAPI instance.
      */
     public static @NotNull MinecraftAPI server(@NotNull ExecutorService executorService, @NotNull SimpleSecurityProvider securityProvider) {
-        return new MinecraftAPI(executorService, securityProvider, true);
+        return builder().executorService(executorService).server(securityProvider);
+    }
+
+    /**
+     * Creates a new MinecraftAPI instance for a server.
+     * Async operations run on an executor owned by the instance, using virtual threads on Java 21+.
+     * @param securityProvider The security provider to use for authentication.
+     * @return A new MinecraftAPI instance.
+     */
+    public static @NotNull MinecraftAPI server(@NotNull SimpleSecurityProvider securityProvider) {
+        return builder().server(securityProvider);
+    }
+
+    /**
+     * Creates a new builder to configure the HTTP client of a MinecraftAPI instance.
+     * @return A new builder.
+     */
+    public static @NotNull Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the metrics of this instance: the latency of the {@code join} and {@code hasJoined} requests, including
+     * {@link #hasJoinedProfile(String, String)}, and the counters {@code join.failures} and {@code hasJoined.failures}
+     * of the requests that completed exceptionally. With a {@link Builder#hasJoinedCacheTtl(Duration) hasJoined cache},
+     * also the counters {@code hasJoinedCache.hits}, {@code hasJoinedCache.coalesced} and {@code hasJoinedCache.misses}.
+     * The {@code .retries} counters count the retries scheduled by the {@link Builder#retryPolicy(RetryPolicy) retry
+     * policy}, and the {@code .tooManyRequests} counters the 429 responses.
+     * @return The metrics.
+     */
+    public @NotNull Metrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -61,11 +148,10 @@ public final class MinecraftAPI {
             throw new IllegalStateException("This method can only be called on a client.");
         }
 
-        String serverId = CryptoUtils.randomHex(20);
+        String serverId = CryptoUtils.randomHex(randomSource, 20);
 
-        OkHttpClient client = new OkHttpClient();
         Request request = new Request.Builder()
-                .url("https://sessionserver.mojang.com/session/minecraft/join")
+                .url(joinUrl)
                 .post(RequestBody.create("{\"accessToken\":\"" + token +
                                 "\",\"selectedProfile\":\"" + uuid +
                                 "\",\"serverId\":\"" + serverId +
@@ -73,13 +159,7 @@ public final class MinecraftAPI {
                         MediaType.get("application/json"))
                 ).build();
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return client.newCall(request).execute();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }, executorService).thenApply(response -> {
+        return send(request, joinEndpoint, response -> {
             if (response.code() >= 200 && response.code() < 300) {
                 return serverId;
             } else {
@@ -99,43 +179,26 @@ public final class MinecraftAPI {
             throw new IllegalStateException("This method can only be called on a server.");
         }
 
-        OkHttpClient client = new OkHttpClient();
-        Request request = new Request.Builder()
-                .url("https://sessionserver.mojang.com/session/minecraft/hasJoined?username=" + username + "&serverId=" + serverId)
-                .get()
-                .build();
-
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return client.newCall(request).execute();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }, executorService).thenApply(response -> {
-            if (response.code() >= 200 && response.code() < 300) {
+        if (hasJoinedCache != null) {
+            return hasJoinedCache.get(username, serverId, () -> requestProfile(username, serverId)).thenApply(profile -> {
                 try {
-                    return response.body().string()
-                            .replaceAll("[\\s\\n]", "")
-                            .replaceAll("(?:.*)id\":\"([0-9a-f]+)\"(?:.*)", "$1");
-                } catch (IOException e) {
+                    return securityProvider.getHid(profile.id());
+                } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
-            } else {
+            });
+        }
+
+        return send(hasJoinedRequest(username, serverId), hasJoinedEndpoint, response -> {
+            if (response.code() < 200 || response.code() >= 300) {
                 throw new RuntimeException("Invalid response code: " + response.code());
             }
-        }).thenApply(uuid -> {
-            if (uuid == null || uuid.isEmpty()) {
+
+            UUID uuid = ProfileReader.readId(response.body().byteStream());
+            if (uuid == null) {
                 throw new RuntimeException("Invalid response body.");
             }
 
-            StringBuilder formattedUUID = new StringBuilder(uuid);
-            formattedUUID.insert(8, "-");
-            formattedUUID.insert(13, "-");
-            formattedUUID.insert(18, "-");
-            formattedUUID.insert(23, "-");
-
-            return UUID.fromString(formattedUUID.toString());
-        }).thenApply(uuid -> {
             try {
                 return securityProvider.getHid(uuid);
             } catch (Exception e) {
@@ -144,4 +207,495 @@ public final class MinecraftAPI {
         });
     }
 
+    /**
+     * The server checks if the client is trying to join with the correct server ID and reads the whole profile.
+     * @param username The client's username.
+     * @param serverId The server ID.
+     * @return A CompletableFuture that completes with the client's profile, or an exception if the request failed.
+     */
+    public @NotNull CompletableFuture<GameProfile> hasJoinedProfile(@NotNull String username, @NotNull String serverId) {
+        if (!isServer) {
+            throw new IllegalStateException("This method can only be called on a server.");
+        }
+
+        if (hasJoinedCache != null) {
+            return hasJoinedCache.get(username, serverId, () -> requestProfile(username, serverId));
+        }
+        return requestProfile(username, serverId);
+    }
+
+    private @NotNull CompletableFuture<GameProfile> requestProfile(@NotNull String username, @NotNull String serverId) {
+        return send(hasJoinedRequest(username, serverId), hasJoinedEndpoint, response -> {
+            if (response.code() < 200 || response.code() >= 300) {
+                throw new RuntimeException("Invalid response code: " + response.code());
+            }
+
+            GameProfile profile = ProfileReader.readProfile(response.body().byteStream());
+            if (profile == null) {
+                throw new RuntimeException("Invalid response body.");
+            }
+            return profile;
+        });
+    }
+
+    private @NotNull Request hasJoinedRequest(@NotNull String username, @NotNull String serverId) {
+        return new Request.Builder()
+                .url(hasJoinedUrl.newBuilder()
+                        .addQueryParameter("username", username)
+                        .addQueryParameter("serverId", serverId)
+                        .build())
+                .get()
+                .build();
+    }
+
+    /**
+     * Sends the request using the configured transport and maps the response with the given handler.
+     * The response is closed once the handler returns, and cancelling the returned future cancels the call.
+     */
+    private <T> @NotNull CompletableFuture<T> send(@NotNull Request request, @NotNull Endpoint endpoint, @NotNull ResponseHandler<T> handler) {
+        Exchange<T> exchange = new Exchange<>(request, endpoint, handler);
+        exchange.attempt();
+        return exchange.future;
+    }
+
+    /**
+     * Gets the time requested by the {@code Retry-After} header, in seconds or as an HTTP date.
+     * @return Nanoseconds to wait, 0 if there is no valid header.
+     */
+    private static long retryAfterNanos(@NotNull Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                return Math.max(0, Duration.between(Instant.now(), ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)).toNanos());
+            } catch (DateTimeParseException | ArithmeticException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Releases the pooled connections and the dispatcher threads of the HTTP client.
+     * The executor service and the scheduler are only shut down if they were created by this instance.
+     */
+    @Override
+    public void close() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        if (ownsExecutorService) {
+            executorService.shutdown();
+        }
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * How the requests to the session server are executed.
+     */
+    public enum Transport {
+        /**
+         * Each request blocks a thread of the executor service until the response is received.
+         */
+        BLOCKING,
+        /**
+         * Requests are enqueued on the HTTP client and the futures are completed from its callbacks,
+         * no thread of the executor service is used.
+         */
+        ASYNC
+    }
+
+    /**
+     * Metrics of the requests to one endpoint of the session server.
+     */
+    private static final class Endpoint {
+
+        private final LatencyHistogram latency;
+        private final LongAdder failures;
+        private final LongAdder retries;
+        private final LongAdder tooManyRequests;
+
+        private Endpoint(@NotNull Metrics metrics, @NotNull String name) {
+            this.latency = metrics.latency(name);
+            this.failures = metrics.counter(name + ".failures");
+            this.retries = metrics.counter(name + ".retries");
+            this.tooManyRequests = metrics.counter(name + ".tooManyRequests");
+        }
+    }
+
+    /**
+     * A request and its retries, sent with the configured transport and mapped with the given handler.
+     * Each response is closed once handled, and cancelling the future cancels the call in flight or the pending retry.
+     * Only one attempt runs at a time, and the next one is scheduled by the previous one.
+     */
+    private final class Exchange<T> {
+
+        private final Request request;
+        private final Endpoint endpoint;
+        private final ResponseHandler<T> handler;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+        private int attempts;
+        private volatile @Nullable Call call;
+        private volatile @Nullable Future<?> retry;
+
+        private Exchange(@NotNull Request request, @NotNull Endpoint endpoint, @NotNull ResponseHandler<T> handler) {
+            this.request = request;
+            this.endpoint = endpoint;
+            this.handler = handler;
+            future.whenComplete((result, throwable) -> {
+                if (future.isCancelled()) {
+                    endpoint.latency.recordSince(start);
+                    endpoint.failures.increment();
+                    Call call = this.call;
+                    if (call != null) {
+                        call.cancel();
+                    }
+                    Future<?> retry = this.retry;
+                    if (retry != null) {
+                        retry.cancel(false);
+                    }
+                }
+            });
+        }
+
+        private void attempt() {
+            if (future.isDone()) {
+                return;
+            }
+
+            attempts++;
+            Call call = client.newCall(request);
+            this.call = call;
+            if (future.isCancelled()) {
+                call.cancel();
+                return;
+            }
+
+            if (transport == Transport.ASYNC) {
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                        failed(e);
+                    }
+
+                    @Override
+                    public void onResponse(@NotNull Call call, @NotNull Response response) {
+                        handle(response);
+                    }
+                });
+                return;
+            }
+
+            try {
+                executorService.execute(() -> {
+                    Response response;
+                    try {
+                        response = call.execute();
+                    } catch (IOException e) {
+                        failed(e);
+                        return;
+                    }
+                    handle(response);
+                });
+            } catch (RejectedExecutionException e) {
+                fail(e);
+            }
+        }
+
+        private void handle(@NotNull Response response) {
+            try (response) {
+                int code = response.code();
+                if (code == 429) {
+                    endpoint.tooManyRequests.increment();
+                }
+                if (RetryPolicy.isRetryable(code) && scheduleRetry(code == 429 ? retryAfterNanos(response) : 0)) {
+                    return;
+                }
+                T result = handler.handle(response);
+                if (!future.isDone()) {
+                    endpoint.latency.recordSince(start);
+                    future.complete(result);
+                }
+            } catch (IOException e) {
+                fail(new RuntimeException(e));
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+
+        private void failed(@NotNull IOException e) {
+            if (!scheduleRetry(0)) {
+                fail(new RuntimeException(e));
+            }
+        }
+
+        /**
+         * Completes the future exceptionally, the metrics are updated first so that they include this request when
+         * the caller sees the failure.
+         */
+        private void fail(@NotNull Throwable throwable) {
+            if (!future.isDone()) {
+                endpoint.latency.recordSince(start);
+                endpoint.failures.increment();
+                future.completeExceptionally(throwable);
+            }
+        }
+
+        /**
+         * Schedules the next attempt if the retry policy allows it.
+         * @return Whether a retry was scheduled.
+         */
+        private boolean scheduleRetry(long retryAfterNanos) {
+            if (attempts >= retryPolicy.maxAttempts() || future.isDone()) {
+                return false;
+            }
+            long backoff = retryPolicy.backoffNanos(attempts, retryAfterNanos);
+            if (backoff < 0) {
+                return false;
+            }
+
+            try {
+                retry = scheduler.schedule(this::attempt, backoff, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+            endpoint.retries.increment();
+            if (future.isCancelled()) {
+                retry.cancel(false);
+            }
+            return true;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(@NotNull Response response) throws IOException;
+    }
+
+    /**
+     * Builder for {@link MinecraftAPI} instances.
+     * The HTTP client built from this configuration is shared by every request of the resulting instance.
+     */
+    public static final class Builder {
+
+        private @Nullable ExecutorService executorService;
+        private int maxIdleConnections = 32;
+        private Duration keepAlive = Duration.ofMinutes(5);
+        private int maxRequests = 256;
+        private boolean http2 = true;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        private Duration callTimeout = Duration.ofSeconds(30);
+        private Transport transport = Transport.BLOCKING;
+        private RandomSource randomSource = RandomSource.shared();
+        private HttpUrl sessionServer = HttpUrl.get(DEFAULT_SESSION_SERVER);
+        private @Nullable Duration hasJoinedCacheTtl;
+        private RetryPolicy retryPolicy = RetryPolicy.NONE;
+        private @Nullable ScheduledExecutorService scheduler;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the executor service to use for async operations.
+         * If none is set, the instance creates its own, using virtual threads on Java 21+.
+         * @param executorService The executor service.
+         * @return This builder.
+         */
+        public @NotNull Builder executorService(@NotNull ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of idle connections kept in the pool.
+         * @param maxIdleConnections Maximum number of idle connections.
+         * @return This builder.
+         */
+        public @NotNull Builder maxIdleConnections(int maxIdleConnections) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("maxIdleConnections must not be negative.");
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept in the pool.
+         * @param keepAlive Keep-alive duration.
+         * @return This builder.
+         */
+        public @NotNull Builder keepAlive(@NotNull Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests, this applies to the session server host too.
+         * @param maxRequests Maximum number of concurrent requests.
+         * @return This builder.
+         */
+        public @NotNull Builder maxRequests(int maxRequests) {
+            if (maxRequests < 1) {
+                throw new IllegalArgumentException("maxRequests must be positive.");
+            }
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * Enables or disables HTTP/2, when disabled only HTTP/1.1 is used.
+         * @param http2 Whether HTTP/2 can be negotiated.
+         * @return This builder.
+         */
+        public @NotNull Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout, zero means no timeout.
+         * @param connectTimeout Connect timeout.
+         * @return This builder.
+         */
+        public @NotNull Builder connectTimeout(@NotNull Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the read timeout, zero means no timeout.
+         * @param readTimeout Read timeout.
+         * @return This builder.
+         */
+        public @NotNull Builder readTimeout(@NotNull Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the timeout of a whole call, zero means no timeout.
+         * @param callTimeout Call timeout.
+         * @return This builder.
+         */
+        public @NotNull Builder callTimeout(@NotNull Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * Sets how the requests are executed, {@link Transport#BLOCKING} by default.
+         * @param transport The transport.
+         * @return This builder.
+         */
+        public @NotNull Builder transport(@NotNull Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Sets the source of the random server ids, {@link RandomSource#shared()} by default.
+         * @param randomSource Random source.
+         * @return This builder.
+         */
+        public @NotNull Builder randomSource(@NotNull RandomSource randomSource) {
+            this.randomSource = randomSource;
+            return this;
+        }
+
+        /**
+         * Sets the base URL of the session server, {@link #DEFAULT_SESSION_SERVER} by default.
+         * The requests are sent to {@code <url>/session/minecraft/join} and {@code <url>/session/minecraft/hasJoined}.
+         * @param sessionServer Base URL, e.g. {@code http://localhost:8080}.
+         * @return This builder.
+         * @throws IllegalArgumentException If the URL is not a valid HTTP or HTTPS URL.
+         */
+        public @NotNull Builder sessionServer(@NotNull String sessionServer) {
+            this.sessionServer = HttpUrl.get(sessionServer);
+            return this;
+        }
+
+        /**
+         * Enables the cache of the hasJoined responses of a server, disabled by default.
+         * Concurrent {@link MinecraftAPI#hasJoined(String, String)} and {@link MinecraftAPI#hasJoinedProfile(String, String)} calls with the
+         * same username and server id share a single request, and a successful response is reused for the given time.
+         * Failed requests are not cached. Cancelling a shared call does not cancel its request.
+         * @param ttl Time a successful response is reused, a few seconds is enough to absorb retries and reconnects.
+         * @return This builder.
+         */
+        public @NotNull Builder hasJoinedCacheTtl(@NotNull Duration ttl) {
+            if (ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("ttl must be positive.");
+            }
+            this.hasJoinedCacheTtl = ttl;
+            return this;
+        }
+
+        /**
+         * Sets how failed requests are retried, {@link RetryPolicy#NONE} by default.
+         * @param retryPolicy Retry policy, e.g. {@link RetryPolicy#DEFAULT}.
+         * @return This builder.
+         */
+        public @NotNull Builder retryPolicy(@NotNull RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler of the retries, no thread waits for a backoff to elapse.
+         * If none is set and the {@link #retryPolicy(RetryPolicy) retry policy} retries, the instance creates its own.
+         * @param scheduler Scheduled executor service.
+         * @return This builder.
+         */
+        public @NotNull Builder scheduler(@NotNull ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Creates a new MinecraftAPI instance for a client.
+         * @return A new MinecraftAPI instance.
+         */
+        public @NotNull MinecraftAPI client() {
+            return build(null, false);
+        }
+
+        /**
+         * Creates a new MinecraftAPI instance for a server.
+         * @param securityProvider The security provider to use for authentication.
+         * @return A new MinecraftAPI instance.
+         */
+        public @NotNull MinecraftAPI server(@NotNull SimpleSecurityProvider securityProvider) {
+            return build(securityProvider, true);
+        }
+
+        private @NotNull MinecraftAPI build(@Nullable SimpleSecurityProvider securityProvider, boolean isServer) {
+            boolean ownsExecutorService = executorService == null;
+            ExecutorService executorService = ownsExecutorService ? DefaultExecutors.newPerTaskExecutor() : this.executorService;
+            boolean ownsScheduler = scheduler == null && retryPolicy.maxAttempts() > 1;
+            ScheduledExecutorService scheduler = ownsScheduler ? DefaultExecutors.newScheduler() : this.scheduler;
+            return new MinecraftAPI(executorService, securityProvider, isServer, buildHttpClient(), transport, ownsExecutorService, randomSource, sessionServer, isServer ? hasJoinedCacheTtl : null, retryPolicy, scheduler, ownsScheduler);
+        }
+
+        private @NotNull OkHttpClient buildHttpClient() {
+            Dispatcher dispatcher = new Dispatcher(DefaultExecutors.newPerTaskExecutor());
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequests);
+
+            return new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                    .dispatcher(dispatcher)
+                    .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                    .connectTimeout(connectTimeout)
+                    .readTimeout(readTimeout)
+                    .callTimeout(callTimeout)
+                    .build();
+        }
+    }
+
 }
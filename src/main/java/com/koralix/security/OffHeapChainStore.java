@@ -0,0 +1,471 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link ChainStore} kept outside the Java heap, for millions of chains with a fixed memory footprint and no GC pressure.
+ * <p>
+ * Chains are stored in open addressing tables with linear probing, keyed by the raw 32 byte hid, so only hids created by
+ * {@link SimpleSecurityProvider#getHid(java.util.UUID)} can be stored. Other hids, including other spellings of the same
+ * hash, have no chain: they are never found and cannot be stored. Each slot takes {@value #SLOT_SIZE} bytes: the hid, the chain id, the creation seconds and
+ * the creation nanos. The tables are split in up to {@value #SEGMENTS} segments, each with its own lock and an even
+ * share of the maximum size, and the whole memory is allocated up front.
+ * <p>
+ * Expired chains are swept every {@value MemoryChainStore#SWEEP_INTERVAL} updates of a segment. When the segment of
+ * a new chain holds its share of the maximum size, the oldest of the {@value #EVICTION_SAMPLES} chains that follow
+ * the new one in the table is evicted.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class OffHeapChainStore implements ChainStore {
+
+    static final int SLOT_SIZE = TokenParser.HID_LENGTH + Long.BYTES + Long.BYTES + Integer.BYTES;
+    static final int SEGMENTS = 64;
+    static final int EVICTION_SAMPLES = 8;
+    private static final int CHAIN_ID_OFFSET = TokenParser.HID_LENGTH;
+    private static final int SECONDS_OFFSET = CHAIN_ID_OFFSET + Long.BYTES;
+    private static final int NANOS_OFFSET = SECONDS_OFFSET + Long.BYTES;
+    private static final double LOAD_FACTOR = 0.8;
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Segment[] segments;
+    private final AtomicInteger size = new AtomicInteger();
+    private final long ttlSeconds;
+    private final LongAdder evictions = new LongAdder();
+    private final ThreadLocal<Key> keys = ThreadLocal.withInitial(Key::new);
+
+    /**
+     * Creates a new store, allocating the memory for the maximum size.
+     * @param maxSize Maximum number of chains, up to about 2.1 billion.
+     * @param ttl Time after the latest token of a chain when the chain is removed, or null to keep chains until evicted.
+     */
+    public OffHeapChainStore(int maxSize, @Nullable Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+        if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+            throw new IllegalArgumentException("ttl must be positive.");
+        }
+
+        // Each segment holds at most its share of the maximum size, so the store never exceeds it.
+        int segmentCount = Math.min(SEGMENTS, maxSize);
+        if (capacity(maxSize / segmentCount + (maxSize % segmentCount == 0 ? 0 : 1)) > Integer.MAX_VALUE / SLOT_SIZE) {
+            throw new IllegalArgumentException("maxSize must be at most " + maxSize() + ".");
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segments.length; i++) {
+            int maxEntries = maxSize / segments.length + (i < maxSize % segments.length ? 1 : 0);
+            segments[i] = new Segment(maxEntries, capacity(maxEntries));
+        }
+        this.ttlSeconds = ttl == null ? 0 : ttl.getSeconds();
+    }
+
+    @Override
+    public @Nullable ChainState get(@NotNull String hid) {
+        Key key = key(hid);
+        return key == null ? null : segment(key).get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalArgumentException If a chain is stored for a hid not created by
+     *                                  {@link SimpleSecurityProvider#getHid(java.util.UUID)}.
+     */
+    @Override
+    public boolean compareAndSet(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+        Key key = key(hid);
+        if (key == null) {
+            if (expected == null && update != null) {
+                throw new IllegalArgumentException("Invalid hid, expected the Base64Url of a 32 byte hash.");
+            }
+            return expected == null;
+        }
+        return segment(key).compareAndSet(key, expected, update);
+    }
+
+    @Override
+    public void remove(@NotNull String hid) {
+        Key key = key(hid);
+        if (key != null) {
+            segment(key).remove(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The hids are given back in the Base64Url form returned by {@link SimpleSecurityProvider#getHid(java.util.UUID)}.
+     */
+    @Override
+    public void forEach(@NotNull BiConsumer<String, ChainState> action) {
+        for (Segment segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the off heap memory allocated by this store.
+     * @return Allocated bytes.
+     */
+    public long allocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.capacity * SLOT_SIZE;
+        }
+        return bytes;
+    }
+
+    /**
+     * Removes the expired chains.
+     */
+    public void sweep() {
+        for (Segment segment : segments) {
+            segment.sweep();
+        }
+    }
+
+    /**
+     * Gets the number of slots of a segment holding the given number of entries.
+     */
+    private static int capacity(int maxEntries) {
+        return Math.max(maxEntries + 1, (int) Math.ceil(maxEntries / LOAD_FACTOR));
+    }
+
+    /**
+     * Gets the largest maximum size whose segments can each be allocated in one buffer.
+     */
+    private static int maxSize() {
+        int maxEntries = (int) ((Integer.MAX_VALUE / SLOT_SIZE) * LOAD_FACTOR);
+        while (capacity(maxEntries) > Integer.MAX_VALUE / SLOT_SIZE) {
+            maxEntries--;
+        }
+        return maxEntries * SEGMENTS;
+    }
+
+    /**
+     * Decodes the given hid.
+     * @return The key of the hid, or null if it is not the padded Base64Url of a 32 byte hash.
+     */
+    private @Nullable Key key(@NotNull String hid) {
+        Key key = keys.get();
+        return key.decode(hid) ? key : null;
+    }
+
+    private @NotNull Segment segment(@NotNull Key key) {
+        return segments[(int) (((key.k0 >>> 32) * segments.length) >>> 32)];
+    }
+
+    /**
+     * Decoded hid of the current operation.
+     */
+    private static final class Key {
+
+        private final byte[] ascii = new byte[(TokenParser.HID_LENGTH + 2) / 3 * 4];
+        private final byte[] raw = new byte[TokenParser.HID_LENGTH + 1];
+        private final byte[] canonical = new byte[(TokenParser.HID_LENGTH + 2) / 3 * 4];
+        private long k0;
+        private long k1;
+        private long k2;
+        private long k3;
+
+        private boolean decode(@NotNull String hid) {
+            int length = hid.length();
+            if (length != ascii.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = hid.charAt(i);
+                ascii[i] = c > 0x7F ? (byte) '?' : (byte) c;
+            }
+            if (CryptoUtils.b64decode(ascii, 0, length, raw, 0) != TokenParser.HID_LENGTH) {
+                return false;
+            }
+            // Other spellings of the same hash are other hids in the other stores, so they have no chain here.
+            CryptoUtils.b64encode(raw, 0, TokenParser.HID_LENGTH, true, canonical, 0);
+            if (!Arrays.equals(ascii, canonical)) {
+                return false;
+            }
+            k0 = (long) LONG.get(raw, 0);
+            k1 = (long) LONG.get(raw, 8);
+            k2 = (long) LONG.get(raw, 16);
+            k3 = (long) LONG.get(raw, 24);
+            return true;
+        }
+    }
+
+    private final class Segment {
+
+        private final ByteBuffer table;
+        private final int maxEntries;
+        private final int capacity;
+        private final StampedLock lock = new StampedLock();
+        private int entries;
+        private int updates;
+
+        private Segment(int maxEntries, int capacity) {
+            this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+            this.maxEntries = maxEntries;
+            this.capacity = capacity;
+        }
+
+        private @Nullable ChainState get(@NotNull Key key) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                ChainState state = read(key);
+                if (lock.validate(stamp)) {
+                    return state;
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                return read(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private @Nullable ChainState read(@NotNull Key key) {
+            int slot = find(key);
+            if (slot < 0) {
+                return null;
+            }
+            int base = slot * SLOT_SIZE;
+            return new ChainState(table.getLong(base + CHAIN_ID_OFFSET), table.getLong(base + SECONDS_OFFSET), table.getInt(base + NANOS_OFFSET) - 1);
+        }
+
+        private boolean compareAndSet(@NotNull Key key, @Nullable ChainState expected, @Nullable ChainState update) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(key);
+                if (expected == null) {
+                    if (slot >= 0) {
+                        return false;
+                    }
+                    if (update != null) {
+                        insert(key, update);
+                    }
+                    return true;
+                }
+
+                if (slot < 0 || !matches(slot, expected)) {
+                    return false;
+                }
+                if (update == null) {
+                    delete(slot);
+                } else {
+                    write(slot, key, update);
+                    afterUpdate();
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void remove(@NotNull Key key) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(key);
+                if (slot >= 0) {
+                    delete(slot);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void forEach(@NotNull BiConsumer<String, ChainState> action) {
+            // The chains are copied under the lock and given to the action after, so it can use the store.
+            byte[] hids;
+            ChainState[] states;
+            long stamp = lock.readLock();
+            try {
+                hids = new byte[entries * TokenParser.HID_LENGTH];
+                states = new ChainState[entries];
+                int count = 0;
+                for (int slot = 0; slot < capacity; slot++) {
+                    int base = slot * SLOT_SIZE;
+                    if (table.getInt(base + NANOS_OFFSET) != 0) {
+                        table.get(base, hids, count * TokenParser.HID_LENGTH, TokenParser.HID_LENGTH);
+                        states[count++] = new ChainState(table.getLong(base + CHAIN_ID_OFFSET), table.getLong(base + SECONDS_OFFSET), table.getInt(base + NANOS_OFFSET) - 1);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+            byte[] encoded = new byte[(TokenParser.HID_LENGTH + 2) / 3 * 4];
+            for (int i = 0; i < states.length; i++) {
+                int length = CryptoUtils.b64encode(hids, i * TokenParser.HID_LENGTH, TokenParser.HID_LENGTH, true, encoded, 0);
+                action.accept(new String(encoded, 0, length, StandardCharsets.US_ASCII), states[i]);
+            }
+        }
+
+        private void sweep() {
+            long stamp = lock.writeLock();
+            try {
+                sweepLocked();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void sweepLocked() {
+            if (ttlSeconds == 0) {
+                return;
+            }
+
+            long limit = System.currentTimeMillis() / 1000 - ttlSeconds;
+            int slot = 0;
+            while (slot < capacity) {
+                int base = slot * SLOT_SIZE;
+                if (table.getInt(base + NANOS_OFFSET) != 0 && table.getLong(base + SECONDS_OFFSET) < limit) {
+                    // The next entries may be shifted into this slot, check it again.
+                    delete(slot);
+                    evictions.increment();
+                } else {
+                    slot++;
+                }
+            }
+        }
+
+        private void insert(@NotNull Key key, @NotNull ChainState state) {
+            // The capacity is larger than the maximum entries, so the probe sequences always end at an empty slot.
+            if (entries >= maxEntries) {
+                evictOldest(home(key.k1));
+            }
+
+            int slot = find(key);
+            write(-slot - 1, key, state);
+            entries++;
+            size.incrementAndGet();
+            afterUpdate();
+        }
+
+        private void afterUpdate() {
+            if (++updates % MemoryChainStore.SWEEP_INTERVAL == 0) {
+                sweepLocked();
+            }
+        }
+
+        /**
+         * Evicts the oldest of the next {@value #EVICTION_SAMPLES} entries from the given slot, the segment must not
+         * be empty.
+         */
+        private void evictOldest(int from) {
+            int oldest = -1;
+            long oldestSeconds = Long.MAX_VALUE;
+            int slot = from;
+            for (int sampled = 0, scanned = 0; sampled < Math.min(EVICTION_SAMPLES, entries) && scanned < capacity; scanned++) {
+                int base = slot * SLOT_SIZE;
+                if (table.getInt(base + NANOS_OFFSET) != 0) {
+                    sampled++;
+                    if (oldest < 0 || table.getLong(base + SECONDS_OFFSET) < oldestSeconds) {
+                        oldest = slot;
+                        oldestSeconds = table.getLong(base + SECONDS_OFFSET);
+                    }
+                }
+                slot = next(slot);
+            }
+            delete(oldest);
+            evictions.increment();
+        }
+
+        /**
+         * Finds the slot of the given key.
+         * @return The slot, or {@code -slot - 1} of the empty slot where it would be inserted.
+         */
+        private int find(@NotNull Key key) {
+            int slot = home(key.k1);
+            while (true) {
+                int base = slot * SLOT_SIZE;
+                if (table.getInt(base + NANOS_OFFSET) == 0) {
+                    return -slot - 1;
+                }
+                if (table.getLong(base) == key.k0 && table.getLong(base + 8) == key.k1 &&
+                        table.getLong(base + 16) == key.k2 && table.getLong(base + 24) == key.k3) {
+                    return slot;
+                }
+                slot = next(slot);
+            }
+        }
+
+        private boolean matches(int slot, @NotNull ChainState state) {
+            int base = slot * SLOT_SIZE;
+            return table.getLong(base + CHAIN_ID_OFFSET) == state.chainId() &&
+                    table.getLong(base + SECONDS_OFFSET) == state.creationSeconds() &&
+                    table.getInt(base + NANOS_OFFSET) - 1 == state.creationNanos();
+        }
+
+        private void write(int slot, @NotNull Key key, @NotNull ChainState state) {
+            int base = slot * SLOT_SIZE;
+            table.putLong(base, key.k0);
+            table.putLong(base + 8, key.k1);
+            table.putLong(base + 16, key.k2);
+            table.putLong(base + 24, key.k3);
+            table.putLong(base + CHAIN_ID_OFFSET, state.chainId());
+            table.putLong(base + SECONDS_OFFSET, state.creationSeconds());
+            // Nanos are stored plus one so that a zeroed slot is empty.
+            table.putInt(base + NANOS_OFFSET, state.creationNanos() + 1);
+        }
+
+        /**
+         * Removes the entry of the given slot, shifting back the following entries of its probe sequence.
+         */
+        private void delete(int slot) {
+            int hole = slot;
+            int current = slot;
+            while (true) {
+                current = next(current);
+                int base = current * SLOT_SIZE;
+                if (table.getInt(base + NANOS_OFFSET) == 0) {
+                    break;
+                }
+                int home = home(table.getLong(base + 8));
+                boolean inPlace = hole <= current ? hole < home && home <= current : hole < home || home <= current;
+                if (!inPlace) {
+                    for (int i = 0; i < SLOT_SIZE; i += Integer.BYTES) {
+                        table.putInt(hole * SLOT_SIZE + i, table.getInt(base + i));
+                    }
+                    hole = current;
+                }
+            }
+            table.putInt(hole * SLOT_SIZE + NANOS_OFFSET, 0);
+            entries--;
+            size.decrementAndGet();
+        }
+
+        private int home(long hash) {
+            return (int) (((hash & 0xFFFFFFFFL) * capacity) >>> 32);
+        }
+
+        private int next(int slot) {
+            return slot + 1 == capacity ? 0 : slot + 1;
+        }
+    }
+
+}
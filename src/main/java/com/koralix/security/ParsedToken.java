@@ -0,0 +1,17 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fields of a token body, as read by {@link TokenParser}.
+ *
+ * @param hid Hashed id of the token owner.
+ * @param chainId Id of the token chain.
+ * @param epochSecond Creation time, seconds since the epoch.
+ * @param nanos Creation time, nanoseconds of the second.
+ * @param ttl Time to live in seconds, 0 if the token does not expire.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+record ParsedToken(@NotNull String hid, long chainId, long epochSecond, int nanos, long ttl) {
+}
@@ -0,0 +1,317 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Single pass streaming reader for the profiles returned by the Mojang session server.
+ * Values that are not needed are skipped without being materialized.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class ProfileReader {
+
+    private final Reader reader;
+    private final char[] buffer = new char[2048];
+    private final StringBuilder scratch = new StringBuilder(64);
+    private int position;
+    private int limit;
+
+    private ProfileReader(@NotNull InputStream in) {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the top level id of the profile, stopping as soon as it is found.
+     * @param in Profile JSON.
+     * @return The profile id, or null if the body is empty or has no id.
+     * @throws IOException If the body can not be read or is not a valid profile.
+     */
+    static @Nullable UUID readId(@NotNull InputStream in) throws IOException {
+        ProfileReader reader = new ProfileReader(in);
+        if (!reader.beginObject()) {
+            return null;
+        }
+
+        do {
+            reader.readScratch();
+            reader.expect(':');
+            if (reader.scratchEquals("id")) {
+                reader.readScratch();
+                return parseId(reader.scratch);
+            }
+            reader.skipValue();
+        } while (reader.nextMember());
+
+        return null;
+    }
+
+    /**
+     * Reads the whole profile.
+     * @param in Profile JSON.
+     * @return The profile, or null if the body is empty.
+     * @throws IOException If the body can not be read or is not a valid profile.
+     */
+    static @Nullable GameProfile readProfile(@NotNull InputStream in) throws IOException {
+        ProfileReader reader = new ProfileReader(in);
+        if (!reader.beginObject()) {
+            return null;
+        }
+
+        UUID id = null;
+        String name = null;
+        List<GameProfile.Property> properties = List.of();
+        do {
+            reader.readScratch();
+            reader.expect(':');
+            if (reader.scratchEquals("id")) {
+                reader.readScratch();
+                id = parseId(reader.scratch);
+            } else if (reader.scratchEquals("name")) {
+                name = reader.readString();
+            } else if (reader.scratchEquals("properties")) {
+                properties = reader.readProperties();
+            } else {
+                reader.skipValue();
+            }
+        } while (reader.nextMember());
+
+        if (id == null || name == null) {
+            throw new IOException("Profile is missing the id or the name.");
+        }
+        return new GameProfile(id, name, properties);
+    }
+
+    private @NotNull List<GameProfile.Property> readProperties() throws IOException {
+        expect('[');
+        List<GameProfile.Property> properties = new ArrayList<>();
+        if (peek() == ']') {
+            position++;
+            return properties;
+        }
+
+        do {
+            String name = null;
+            String value = null;
+            String signature = null;
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    readScratch();
+                    expect(':');
+                    if (scratchEquals("name")) {
+                        name = readString();
+                    } else if (scratchEquals("value")) {
+                        value = readString();
+                    } else if (scratchEquals("signature")) {
+                        signature = readString();
+                    } else {
+                        skipValue();
+                    }
+                } while (nextMember());
+            }
+            if (name == null || value == null) {
+                throw new IOException("Profile property is missing the name or the value.");
+            }
+            properties.add(new GameProfile.Property(name, value, signature));
+        } while (nextElement());
+
+        return properties;
+    }
+
+    private static @NotNull UUID parseId(@NotNull CharSequence id) throws IOException {
+        try {
+            return UuidCodec.fromUndashed(id);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid profile id.", e);
+        }
+    }
+
+    private boolean beginObject() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == -1) {
+            return false;
+        }
+        if (c != '{') {
+            throw syntaxError("'{'", c);
+        }
+        if (peek() == '}') {
+            position++;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean nextMember() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == '}') {
+            return false;
+        }
+        throw syntaxError("',' or '}'", c);
+    }
+
+    private boolean nextElement() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == ']') {
+            return false;
+        }
+        throw syntaxError("',' or ']'", c);
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = nextNonWhitespace();
+        if (c != expected) {
+            throw syntaxError("'" + expected + "'", c);
+        }
+    }
+
+    private boolean scratchEquals(@NotNull String value) {
+        return value.contentEquals(scratch);
+    }
+
+    private @NotNull String readString() throws IOException {
+        readScratch();
+        return scratch.toString();
+    }
+
+    /**
+     * Reads the next string into the scratch buffer without creating a new string.
+     */
+    private void readScratch() throws IOException {
+        expect('"');
+        scratch.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                scratch.append(readEscape());
+            } else if (c == -1) {
+                throw syntaxError("'\"'", c);
+            } else {
+                scratch.append((char) c);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        return switch (c) {
+            case '"', '\\', '/' -> (char) c;
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> readUnicodeEscape();
+            default -> throw syntaxError("escape sequence", c);
+        };
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw new IOException("Invalid unicode escape.");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private void skipValue() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                } else if (c == -1) {
+                    throw syntaxError("end of value", c);
+                }
+            }
+        } else if (c == -1 || c == ',' || c == '}' || c == ']' || c == ':') {
+            throw syntaxError("value", c);
+        } else {
+            while (true) {
+                c = peek();
+                if (c == -1 || c == ',' || c == '}' || c == ']') {
+                    return;
+                }
+                position++;
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            } else if (c == -1) {
+                throw syntaxError("'\"'", c);
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int peek() throws IOException {
+        int c = nextNonWhitespace();
+        if (c != -1) {
+            position--;
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private static @NotNull IOException syntaxError(@NotNull String expected, int actual) {
+        return new IOException("Invalid profile, expected " + expected + " but found " + (actual == -1 ? "end of input" : "'" + (char) actual + "'"));
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Source of cryptographically strong random values used for chain ids and server ids.
+ * Implementations must be thread safe.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public interface RandomSource {
+
+    /**
+     * Fills the given array with random bytes.
+     * @param bytes Array to fill.
+     */
+    void nextBytes(byte @NotNull [] bytes);
+
+    /**
+     * Generates a random long.
+     * @return Random long.
+     */
+    long nextLong();
+
+    /**
+     * Gets the source backed by a single SecureRandom shared by all threads.
+     * This is the default source.
+     * @return The shared source.
+     */
+    static @NotNull RandomSource shared() {
+        return RandomSources.SHARED;
+    }
+
+    /**
+     * Creates a source where each thread uses its own DRBG SecureRandom, so threads never contend on a lock.
+     * @return A new per thread source.
+     */
+    static @NotNull RandomSource perThread() {
+        return new RandomSources.PerThread();
+    }
+
+    /**
+     * Creates a source where each thread draws from its own buffer of random bytes,
+     * refilled in bulk from the shared SecureRandom when exhausted.
+     * @param bufferSize Size of the buffer of each thread in bytes, at least 8.
+     * @return A new buffered source.
+     */
+    static @NotNull RandomSource buffered(int bufferSize) {
+        return new RandomSources.Buffered(bufferSize);
+    }
+
+}
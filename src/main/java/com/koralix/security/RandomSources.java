@@ -0,0 +1,133 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Implementations of {@link RandomSource}.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class RandomSources {
+
+    static final RandomSource SHARED = new Shared(new SecureRandom());
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private RandomSources() {
+        throw new AssertionError();
+    }
+
+    private static @NotNull SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * Source backed by a single SecureRandom.
+     */
+    static final class Shared implements RandomSource {
+
+        private final SecureRandom random;
+
+        Shared(@NotNull SecureRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public void nextBytes(byte @NotNull [] bytes) {
+            random.nextBytes(bytes);
+        }
+
+        @Override
+        public long nextLong() {
+            return random.nextLong();
+        }
+    }
+
+    /**
+     * Source backed by a SecureRandom per thread.
+     */
+    static final class PerThread implements RandomSource {
+
+        private final ThreadLocal<SecureRandom> randoms = ThreadLocal.withInitial(RandomSources::newDrbg);
+
+        @Override
+        public void nextBytes(byte @NotNull [] bytes) {
+            randoms.get().nextBytes(bytes);
+        }
+
+        @Override
+        public long nextLong() {
+            return randoms.get().nextLong();
+        }
+    }
+
+    /**
+     * Source backed by a buffer of random bytes per thread.
+     */
+    static final class Buffered implements RandomSource {
+
+        private final int bufferSize;
+        private final ThreadLocal<Buffer> buffers;
+
+        Buffered(int bufferSize) {
+            if (bufferSize < Long.BYTES) {
+                throw new IllegalArgumentException("bufferSize must be at least " + Long.BYTES + ".");
+            }
+            this.bufferSize = bufferSize;
+            this.buffers = ThreadLocal.withInitial(() -> new Buffer(bufferSize));
+        }
+
+        @Override
+        public void nextBytes(byte @NotNull [] bytes) {
+            if (bytes.length > bufferSize) {
+                SHARED.nextBytes(bytes);
+                return;
+            }
+            Buffer buffer = buffers.get();
+            int offset = buffer.take(bytes.length);
+            System.arraycopy(buffer.bytes, offset, bytes, 0, bytes.length);
+        }
+
+        @Override
+        public long nextLong() {
+            Buffer buffer = buffers.get();
+            return (long) LONG.get(buffer.bytes, buffer.take(Long.BYTES));
+        }
+
+        private static final class Buffer {
+
+            private final byte[] bytes;
+            private int position;
+
+            private Buffer(int size) {
+                this.bytes = new byte[size];
+                this.position = size;
+            }
+
+            /**
+             * Reserves the given number of unused bytes, refilling the buffer if there are not enough.
+             * @return Offset of the reserved bytes.
+             */
+            private int take(int length) {
+                if (bytes.length - position < length) {
+                    SHARED.nextBytes(bytes);
+                    position = 0;
+                }
+                int offset = position;
+                position += length;
+                return offset;
+            }
+        }
+    }
+
+}
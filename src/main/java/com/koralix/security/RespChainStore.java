@@ -0,0 +1,383 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * {@link ChainStore} kept in a Redis compatible server, so several servers can share the token chains.
+ * <p>
+ * Each chain is a key made of the key prefix and the hid, whose value holds the chain id, the creation seconds and
+ * the creation nanos. {@link #compareAndSet} runs a small Lua script, so it is atomic in the server. Commands of all the
+ * threads share one pipelined connection, which is opened again on the next command if it is lost.
+ * <p>
+ * The server expires the chains itself, so {@link #evictionCount()} is always zero. {@link #size()} and
+ * {@link #forEach} scan the keys of the prefix and are meant for monitoring and snapshots, not for the hot path.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class RespChainStore implements ChainStore, AutoCloseable {
+
+    /**
+     * Replaces the chain if its current value is the expected one, where an empty string means no chain.
+     * KEYS[1] is the chain key, ARGV[1] the expected value, ARGV[2] the new value and ARGV[3] the time to live
+     * in milliseconds, or 0 to keep the chain until removed.
+     */
+    static final String COMPARE_AND_SET_SCRIPT = """
+            local current = redis.call('GET', KEYS[1])
+            if (current or '') ~= ARGV[1] then
+              return 0
+            end
+            if ARGV[2] == '' then
+              redis.call('DEL', KEYS[1])
+            elseif ARGV[3] == '0' then
+              redis.call('SET', KEYS[1], ARGV[2])
+            else
+              redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+            end
+            return 1
+            """;
+    static final String COMPARE_AND_SET_SHA = sha1(COMPARE_AND_SET_SCRIPT);
+
+    private static final int VALUE_LENGTH = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int SCAN_COUNT = 1000;
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final InetSocketAddress address;
+    private final String keyPrefix;
+    private final String ttlMillis;
+    private final @Nullable String password;
+    private final int connectTimeout;
+    private final long commandTimeout;
+    private volatile @Nullable RespConnection connection;
+    private volatile boolean closed;
+
+    private RespChainStore(@NotNull Builder builder) {
+        this.address = builder.address;
+        this.keyPrefix = builder.keyPrefix;
+        this.ttlMillis = builder.ttl == null ? "0" : Long.toString(builder.ttl.toMillis());
+        this.password = builder.password;
+        this.connectTimeout = (int) builder.connectTimeout.toMillis();
+        this.commandTimeout = builder.commandTimeout.toNanos();
+    }
+
+    /**
+     * Creates a builder for a store in the given server.
+     * @param host Host of the server.
+     * @param port Port of the server, usually 6379.
+     * @return A new builder.
+     */
+    public static @NotNull Builder builder(@NotNull String host, int port) {
+        return new Builder(InetSocketAddress.createUnresolved(host, port));
+    }
+
+    @Override
+    public @Nullable ChainState get(@NotNull String hid) {
+        return await(getAsync(hid));
+    }
+
+    @Override
+    public boolean compareAndSet(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+        return await(compareAndSetAsync(hid, expected, update));
+    }
+
+    @Override
+    public void remove(@NotNull String hid) {
+        await(removeAsync(hid));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<@Nullable ChainState> getAsync(@NotNull String hid) {
+        return send("GET", key(hid)).thenApply(reply -> decode((byte[]) reply));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> compareAndSetAsync(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+        byte[] key = key(hid);
+        byte[] expectedValue = encode(expected);
+        byte[] updateValue = encode(update);
+        return send("EVALSHA", COMPARE_AND_SET_SHA, "1", key, expectedValue, updateValue, ttlMillis)
+                .exceptionallyCompose(e -> {
+                    // The script is not cached yet, EVAL sends its source and caches it.
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof RespConnection.RespException && cause.getMessage().startsWith("NOSCRIPT")) {
+                        return send("EVAL", COMPARE_AND_SET_SCRIPT, "1", key, expectedValue, updateValue, ttlMillis);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                })
+                .thenApply(reply -> (Long) reply == 1);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Void> removeAsync(@NotNull String hid) {
+        return send("DEL", key(hid)).thenApply(reply -> null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The chain states are read with a single MGET.
+     */
+    @Override
+    public @NotNull CompletableFuture<List<@Nullable ChainState>> getAllAsync(@NotNull List<String> hids) {
+        if (hids.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        Object[] arguments = new Object[hids.size() + 1];
+        arguments[0] = "MGET";
+        for (int i = 0; i < hids.size(); i++) {
+            arguments[i + 1] = key(hids.get(i));
+        }
+        return send(arguments).thenApply(reply -> {
+            List<?> values = (List<?>) reply;
+            List<ChainState> states = new ArrayList<>(values.size());
+            for (Object value : values) {
+                states.add(decode((byte[]) value));
+            }
+            return states;
+        });
+    }
+
+    @Override
+    public void forEach(@NotNull BiConsumer<String, ChainState> action) {
+        scan(keys -> {
+            List<String> hids = new ArrayList<>(keys.size());
+            for (Object key : keys) {
+                hids.add(new String((byte[]) key, StandardCharsets.UTF_8).substring(keyPrefix.length()));
+            }
+            List<ChainState> states = await(getAllAsync(hids));
+            for (int i = 0; i < hids.size(); i++) {
+                ChainState state = states.get(i);
+                if (state != null) {
+                    action.accept(hids.get(i), state);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        int[] size = new int[1];
+        scan(keys -> size[0] += keys.size());
+        return size[0];
+    }
+
+    @Override
+    public long evictionCount() {
+        return 0;
+    }
+
+    /**
+     * Closes the connection, failing the commands that were not answered.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        RespConnection connection = this.connection;
+        if (connection != null) {
+            connection.close();
+            this.connection = null;
+        }
+    }
+
+    private void scan(@NotNull Consumer<List<?>> batch) {
+        String cursor = "0";
+        do {
+            List<?> reply = (List<?>) await(send("SCAN", cursor, "MATCH", escapeGlob(keyPrefix) + "*", "COUNT", Integer.toString(SCAN_COUNT)));
+            cursor = new String((byte[]) reply.get(0), StandardCharsets.US_ASCII);
+            List<?> keys = (List<?>) reply.get(1);
+            if (!keys.isEmpty()) {
+                batch.accept(keys);
+            }
+        } while (!cursor.equals("0"));
+    }
+
+    private @NotNull CompletableFuture<Object> send(@NotNull Object... arguments) {
+        RespConnection connection = this.connection;
+        if (connection == null || !connection.isOpen()) {
+            try {
+                connection = connect();
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return connection.send(arguments);
+    }
+
+    private synchronized @NotNull RespConnection connect() throws IOException {
+        if (closed) {
+            throw new IOException("The chain store is closed.");
+        }
+        RespConnection connection = this.connection;
+        if (connection == null || !connection.isOpen()) {
+            InetSocketAddress resolved = address.isUnresolved() ? new InetSocketAddress(address.getHostString(), address.getPort()) : address;
+            connection = new RespConnection(resolved, connectTimeout);
+            if (password != null) {
+                try {
+                    await(connection.send("AUTH", password));
+                } catch (RuntimeException e) {
+                    connection.close();
+                    throw new IOException("Could not authenticate to the chain store: " + e.getMessage(), e);
+                }
+            }
+            this.connection = connection;
+        }
+        return connection;
+    }
+
+    private <T> T await(@NotNull CompletableFuture<T> future) {
+        try {
+            return future.get(commandTimeout, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RuntimeException("The chain store did not answer in time.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte @NotNull [] key(@NotNull String hid) {
+        return (keyPrefix + hid).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte @NotNull [] encode(@Nullable ChainState state) {
+        if (state == null) {
+            return EMPTY;
+        }
+        byte[] value = new byte[VALUE_LENGTH];
+        LONG.set(value, 0, state.chainId());
+        LONG.set(value, Long.BYTES, state.creationSeconds());
+        INT.set(value, Long.BYTES * 2, state.creationNanos());
+        return value;
+    }
+
+    private static @Nullable ChainState decode(byte @Nullable [] value) {
+        if (value == null || value.length != VALUE_LENGTH) {
+            return null;
+        }
+        return new ChainState((long) LONG.get(value, 0), (long) LONG.get(value, Long.BYTES), (int) INT.get(value, Long.BYTES * 2));
+    }
+
+    private static @NotNull String escapeGlob(@NotNull String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static @NotNull String sha1(@NotNull String script) {
+        try {
+            return CryptoUtils.toHex(MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Builder of {@link RespChainStore}.
+     */
+    public static final class Builder {
+
+        private final InetSocketAddress address;
+        private String keyPrefix = "mc-simple-security:chain:";
+        private @Nullable Duration ttl;
+        private @Nullable String password;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration commandTimeout = Duration.ofSeconds(5);
+
+        private Builder(@NotNull InetSocketAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Sets the prefix of the chain keys, {@code mc-simple-security:chain:} by default.
+         * @param keyPrefix Key prefix.
+         * @return This builder.
+         */
+        public @NotNull Builder keyPrefix(@NotNull String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * Sets the time after the latest token of a chain when the server removes the chain, never by default.
+         * @param ttl Time to live, or null to keep chains until removed.
+         * @return This builder.
+         */
+        public @NotNull Builder ttl(@Nullable Duration ttl) {
+            if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+                throw new IllegalArgumentException("ttl must be positive.");
+            }
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Sets the password sent with AUTH after connecting. A rejected password fails the command that opened the
+         * connection.
+         * @param password Password, or null to not authenticate.
+         * @return This builder.
+         */
+        public @NotNull Builder password(@Nullable String password) {
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout, 5 seconds by default.
+         * @param connectTimeout Connect timeout.
+         * @return This builder.
+         */
+        public @NotNull Builder connectTimeout(@NotNull Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets how long the blocking methods wait for the server, 5 seconds by default.
+         * @param commandTimeout Command timeout.
+         * @return This builder.
+         */
+        public @NotNull Builder commandTimeout(@NotNull Duration commandTimeout) {
+            this.commandTimeout = commandTimeout;
+            return this;
+        }
+
+        /**
+         * Builds the store, the connection is opened on the first command.
+         * @return The store.
+         */
+        public @NotNull RespChainStore build() {
+            return new RespChainStore(this);
+        }
+    }
+
+}
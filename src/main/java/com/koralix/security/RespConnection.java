@@ -0,0 +1,251 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Pipelined connection to a server speaking the Redis serialization protocol (RESP).
+ * <p>
+ * Commands are queued and written by a single writer, which flushes once per batch of queued commands, while a reader
+ * completes the pending commands in order as their replies arrive. Replies are decoded as null, {@link Long},
+ * {@code byte[]} for bulk strings, {@link String} for simple strings and {@link List} for arrays; error replies
+ * complete the command with a {@link RespException}.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class RespConnection implements AutoCloseable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    private final Queue<Command> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService executor = DefaultExecutors.newPerTaskExecutor();
+    private volatile boolean closed;
+
+    /**
+     * Connects to the given server.
+     * @param address Address of the server.
+     * @param timeout Connect timeout in milliseconds.
+     * @throws IOException If the connection fails.
+     */
+    RespConnection(@NotNull InetSocketAddress address, int timeout) throws IOException {
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(address, timeout);
+        this.in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        executor.execute(this::writeLoop);
+        executor.execute(this::readLoop);
+    }
+
+    /**
+     * Sends a command.
+     * @param arguments Command name and arguments, strings are sent as UTF-8.
+     * @return The reply.
+     */
+    @NotNull CompletableFuture<Object> send(@NotNull Object... arguments) {
+        Command command = new Command(arguments);
+        if (closed) {
+            command.future.completeExceptionally(new IOException("The connection is closed."));
+            return command.future;
+        }
+        queue.add(command);
+        if (closed && queue.remove(command)) {
+            command.future.completeExceptionally(new IOException("The connection is closed."));
+        }
+        return command.future;
+    }
+
+    boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        fail(new IOException("The connection is closed."));
+    }
+
+    private void writeLoop() {
+        List<Command> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                // The whole batch is pending before writing, so the reader always finds the command of a reply and
+                // a failed write fails every command of the batch.
+                pending.addAll(batch);
+                for (Command command : batch) {
+                    write(command.arguments);
+                }
+                batch.clear();
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("The connection was interrupted.", e));
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                Object reply = read();
+                Command command = pending.poll();
+                if (command == null) {
+                    throw new IOException("Received a reply without a command.");
+                }
+                if (reply instanceof RespException error) {
+                    command.future.completeExceptionally(error);
+                } else {
+                    command.future.complete(reply);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void fail(@NotNull IOException cause) {
+        if (!closed) {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+            executor.shutdownNow();
+        }
+
+        // Also drained when already closed, the writer may have added a command after the first failure.
+        Command command;
+        while ((command = pending.poll()) != null) {
+            command.future.completeExceptionally(cause);
+        }
+        while ((command = queue.poll()) != null) {
+            command.future.completeExceptionally(cause);
+        }
+    }
+
+    private void write(@NotNull Object[] arguments) throws IOException {
+        out.write('*');
+        writeNumber(arguments.length);
+        for (Object argument : arguments) {
+            byte[] bytes = argument instanceof byte[] array ? array : argument.toString().getBytes(StandardCharsets.UTF_8);
+            out.write('$');
+            writeNumber(bytes.length);
+            out.write(bytes);
+            out.write(CRLF);
+        }
+    }
+
+    private void writeNumber(long value) throws IOException {
+        byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        out.write(digits);
+        out.write(CRLF);
+    }
+
+    private @Nullable Object read() throws IOException {
+        int type = in.read();
+        return switch (type) {
+            case '+' -> readLine();
+            case '-' -> new RespException(readLine());
+            case ':' -> readNumber();
+            case '$' -> {
+                long length = readNumber();
+                if (length < 0) {
+                    yield null;
+                }
+                if (length > Integer.MAX_VALUE - 2) {
+                    throw new IOException("Bulk string is too long.");
+                }
+                byte[] bytes = in.readNBytes((int) length);
+                if (bytes.length != length || in.read() != '\r' || in.read() != '\n') {
+                    throw new EOFException("Incomplete bulk string.");
+                }
+                yield bytes;
+            }
+            case '*' -> {
+                long length = readNumber();
+                if (length < 0) {
+                    yield null;
+                }
+                List<Object> elements = new ArrayList<>((int) Math.min(length, 1024));
+                for (long i = 0; i < length; i++) {
+                    elements.add(read());
+                }
+                yield elements;
+            }
+            case -1 -> throw new EOFException("The server closed the connection.");
+            default -> throw new IOException("Invalid reply type '" + (char) type + "'.");
+        };
+    }
+
+    private @NotNull String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                throw new EOFException("The server closed the connection.");
+            }
+            if (c == '\r') {
+                if (in.read() != '\n') {
+                    throw new IOException("Invalid line ending.");
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+    }
+
+    private long readNumber() throws IOException {
+        String line = readLine();
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number '" + line + "'.", e);
+        }
+    }
+
+    private record Command(@NotNull Object[] arguments, @NotNull CompletableFuture<Object> future) {
+
+        private Command(@NotNull Object[] arguments) {
+            this(arguments, new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Error reply of the server.
+     */
+    static final class RespException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        RespException(@NotNull String message) {
+            super(message);
+        }
+    }
+
+}
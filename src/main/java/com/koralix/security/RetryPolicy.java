@@ -0,0 +1,81 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy of the requests to the session server.
+ * <p>
+ * Requests that fail with an I/O error, a 5xx response or a 429 response are sent again after an exponential
+ * backoff, {@code initialBackoff * multiplier^(retry - 1)} capped at {@code maxBackoff}, reduced by a random fraction
+ * of up to {@code jitter} so that clients do not retry in lockstep. A 429 response waits at least its
+ * {@code Retry-After}, and is not retried when that is longer than {@code maxBackoff}.
+ *
+ * @param maxAttempts Maximum number of attempts of a request, including the first one.
+ * @param initialBackoff Backoff before the first retry.
+ * @param maxBackoff Maximum backoff between two attempts.
+ * @param multiplier Growth of the backoff after each retry, at least 1.
+ * @param jitter Maximum fraction of the backoff removed at random, between 0 and 1.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public record RetryPolicy(int maxAttempts, @NotNull Duration initialBackoff, @NotNull Duration maxBackoff, double multiplier, double jitter) {
+
+    /**
+     * Sends each request once.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, 1, 0);
+
+    /**
+     * Up to 3 attempts, backing off 200 ms and then 400 ms, with up to half of each backoff removed at random,
+     * and waiting up to 5 seconds for a {@code Retry-After}.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, Duration.ofMillis(200), Duration.ofSeconds(5), 2, 0.5);
+
+    /**
+     * Creates a retry policy.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive.");
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("initialBackoff must be between zero and maxBackoff.");
+        }
+        if (!(multiplier >= 1)) {
+            throw new IllegalArgumentException("multiplier must be at least 1.");
+        }
+        if (!(jitter >= 0 && jitter <= 1)) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1.");
+        }
+    }
+
+    /**
+     * Gets whether a response with the given status code is retried.
+     * @param code Status code.
+     * @return True for 429 and 5xx responses.
+     */
+    static boolean isRetryable(int code) {
+        return code == 429 || code >= 500 && code < 600;
+    }
+
+    /**
+     * Gets the backoff before a retry.
+     * @param retry Number of the retry, starting at 1.
+     * @param retryAfterNanos Minimum backoff requested by the server, or 0.
+     * @return Backoff in nanoseconds, or -1 if the server asked to wait longer than {@link #maxBackoff()}.
+     */
+    long backoffNanos(int retry, long retryAfterNanos) {
+        long max = maxBackoff.toNanos();
+        if (retryAfterNanos > max) {
+            return -1;
+        }
+        double backoff = Math.min(max, initialBackoff.toNanos() * Math.pow(multiplier, retry - 1));
+        backoff -= backoff * jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.max((long) backoff, retryAfterNanos);
+    }
+
+}
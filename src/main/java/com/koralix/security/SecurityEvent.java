@@ -0,0 +1,48 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Event of the security provider. Events never hold the tokens themselves.
+ *
+ * @param type Type of the event.
+ * @param hid Hashed id of the token, or null if the token could not be parsed.
+ * @param chainId Chain id of the token, or 0 if the token could not be parsed.
+ * @param timestamp Time of the event, milliseconds since the epoch.
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public record SecurityEvent(@NotNull Type type, @Nullable String hid, long chainId, long timestamp) {
+
+    /**
+     * Type of a security event.
+     */
+    public enum Type {
+        /**
+         * A token was generated.
+         */
+        TOKEN_GENERATED,
+        /**
+         * A token could not be parsed.
+         */
+        BAD_FORMAT,
+        /**
+         * A token of a chain that does not exist anymore, or never existed, was used.
+         */
+        WRONG_CHAIN,
+        /**
+         * A token with an invalid signature was used.
+         */
+        BAD_SIGNATURE,
+        /**
+         * An expired token was used, so its chain was broken.
+         */
+        EXPIRED,
+        /**
+         * A token that is not the latest of its chain was used again, so the chain was broken.
+         */
+        REPLAY
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+/**
+ * Destination of the security events, called from the background thread of {@link SecurityEvents}.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+@FunctionalInterface
+public interface SecurityEventSink {
+
+    /**
+     * Handles an event.
+     * @param event Security event.
+     */
+    void accept(@NotNull SecurityEvent event);
+
+    /**
+     * Creates a sink that logs the events at INFO level.
+     * @param logger Logger.
+     * @return A new logging sink.
+     */
+    static @NotNull SecurityEventSink logging(@NotNull Logger logger) {
+        return event -> {
+            if (!logger.isInfoEnabled()) {
+                return;
+            }
+            switch (event.type()) {
+                case TOKEN_GENERATED -> logger.info("Token generated for hid {} with chain id {}", event.hid(), event.chainId());
+                case BAD_FORMAT -> logger.info("Received an invalid token");
+                case WRONG_CHAIN -> logger.info("Someone tried to use a token from a different chain for hid {}", event.hid());
+                case BAD_SIGNATURE -> logger.info("Token for hid {} has an invalid signature", event.hid());
+                case EXPIRED -> logger.info("Token chain for hid {} was broken by an expired token", event.hid());
+                case REPLAY -> logger.info("Token chain for hid {} was broken by a reused token", event.hid());
+            }
+        };
+    }
+
+}
@@ -0,0 +1,317 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous channel of {@link SecurityEvent security events}.
+ * <p>
+ * Publishing an event only counts it and, if it passes the sampling and the rate limit of its type, puts it in a
+ * bounded lock free ring buffer. A background thread drains the buffer into the {@link SecurityEventSink sink}, so
+ * formatting and I/O never happen in the thread that published the event. Events are dropped when the buffer is full.
+ * <p>
+ * The background task is only started when an event is buffered, and it ends once the buffer is empty, so a channel
+ * holds no thread while idle and an unclosed channel leaks nothing. {@link #close() Closing} the channel delivers the
+ * buffered events and rejects the next ones.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class SecurityEvents implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityEvents.class);
+    private static final SecurityEvent.Type[] TYPES = SecurityEvent.Type.values();
+
+    private final SecurityEventSink sink;
+    private final SecurityEvent[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+    private final double[] sampleRates = new double[TYPES.length];
+    private final RateLimit[] rateLimits = new RateLimit[TYPES.length];
+    private final LongAdder[] counts = new LongAdder[TYPES.length];
+    private final LongAdder[] suppressed = new LongAdder[TYPES.length];
+    private final LongAdder dropped = new LongAdder();
+    private final ExecutorService executor = DefaultExecutors.newPerTaskExecutor();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private SecurityEvents(@NotNull Builder builder) {
+        this.sink = builder.sink;
+        this.buffer = new SecurityEvent[builder.capacity];
+        this.sequences = new AtomicLongArray(builder.capacity);
+        for (int i = 0; i < builder.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = builder.capacity - 1;
+        for (SecurityEvent.Type type : TYPES) {
+            sampleRates[type.ordinal()] = builder.sampleRates[type.ordinal()];
+            int limit = builder.rateLimits[type.ordinal()];
+            rateLimits[type.ordinal()] = limit == Integer.MAX_VALUE ? null : new RateLimit(limit);
+            counts[type.ordinal()] = new LongAdder();
+            suppressed[type.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * Creates a builder of a channel delivering to the given sink.
+     * @param sink Sink of the events.
+     * @return A new builder.
+     */
+    public static @NotNull Builder builder(@NotNull SecurityEventSink sink) {
+        return new Builder(sink);
+    }
+
+    /**
+     * Publishes an event.
+     * @param type Type of the event.
+     * @param hid Hashed id of the token, or null if unknown.
+     * @param chainId Chain id of the token, or 0 if unknown.
+     */
+    public void publish(@NotNull SecurityEvent.Type type, @Nullable String hid, long chainId) {
+        int index = type.ordinal();
+        counts[index].increment();
+        double sampleRate = sampleRates[index];
+        RateLimit rateLimit = rateLimits[index];
+        if ((sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) ||
+                (rateLimit != null && !rateLimit.tryAcquire())) {
+            suppressed[index].increment();
+            return;
+        }
+        if (closed || !offer(new SecurityEvent(type, hid, chainId, System.currentTimeMillis()))) {
+            dropped.increment();
+        } else if (!draining.get() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile, the buffered events are delivered by close.
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events of the given type published so far, including the suppressed and dropped ones.
+     * @param type Type of the events.
+     * @return Number of events.
+     */
+    public long count(@NotNull SecurityEvent.Type type) {
+        return counts[type.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of events of the given type that were not delivered because of the sampling or the rate limit.
+     * @param type Type of the events.
+     * @return Number of suppressed events.
+     */
+    public long suppressed(@NotNull SecurityEvent.Type type) {
+        return suppressed[type.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of events that were not delivered because the buffer was full.
+     * @return Number of dropped events.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops accepting events and waits until the buffered events are delivered.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Events published while closing, whose background task could no longer be started.
+        while (tail.get() != head) {
+            SecurityEvent event = poll();
+            if (event == null) {
+                Thread.onSpinWait();
+            } else {
+                deliver(event);
+            }
+        }
+    }
+
+    /**
+     * Bounded multi producer ring buffer, each slot sequence tells whether it is free for the producer of a position
+     * or full for the consumer.
+     */
+    private boolean offer(@NotNull SecurityEvent event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.weakCompareAndSetVolatile(position, position + 1)) {
+                    buffer[index] = event;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private boolean available() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    private @Nullable SecurityEvent poll() {
+        if (!available()) {
+            return null;
+        }
+        int index = (int) head & mask;
+        SecurityEvent event = buffer[index];
+        buffer[index] = null;
+        sequences.set(index, head + buffer.length);
+        head++;
+        return event;
+    }
+
+    private void drain() {
+        while (true) {
+            SecurityEvent event;
+            while ((event = poll()) != null) {
+                deliver(event);
+            }
+            draining.set(false);
+            // Checked again once the flag is cleared, a producer that still saw it set already made its event
+            // available, and one that sees it cleared starts a new task.
+            if (!available() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void deliver(@NotNull SecurityEvent event) {
+        try {
+            sink.accept(event);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Security event sink failed", e);
+        }
+    }
+
+    /**
+     * Fixed one second window rate limit.
+     */
+    private static final class RateLimit {
+
+        private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+        private final int perSecond;
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicInteger permits = new AtomicInteger();
+
+        private RateLimit(int perSecond) {
+            this.perSecond = perSecond;
+        }
+
+        private boolean tryAcquire() {
+            long now = System.nanoTime();
+            long start = windowStart.get();
+            if (now - start >= WINDOW && windowStart.compareAndSet(start, now)) {
+                permits.set(0);
+            }
+            return permits.get() < perSecond && permits.incrementAndGet() <= perSecond;
+        }
+    }
+
+    /**
+     * Builder of {@link SecurityEvents}.
+     */
+    public static final class Builder {
+
+        private final SecurityEventSink sink;
+        private int capacity = 8192;
+        private final double[] sampleRates = new double[TYPES.length];
+        private final int[] rateLimits = new int[TYPES.length];
+
+        private Builder(@NotNull SecurityEventSink sink) {
+            this.sink = sink;
+            for (SecurityEvent.Type type : TYPES) {
+                sampleRates[type.ordinal()] = 1;
+                rateLimits[type.ordinal()] = 1000;
+            }
+        }
+
+        /**
+         * Sets the number of events the buffer holds before dropping them, rounded up to a power of two, 8192 by default.
+         * @param capacity Capacity of the buffer.
+         * @return This builder.
+         */
+        public @NotNull Builder capacity(int capacity) {
+            if (capacity < 2 || capacity > 1 << 30) {
+                throw new IllegalArgumentException("capacity must be between 2 and " + (1 << 30) + ".");
+            }
+            this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the events of the given type that are delivered, all of them by default.
+         * @param type Type of the events.
+         * @param sampleRate Fraction between 0 and 1.
+         * @return This builder.
+         */
+        public @NotNull Builder sampleRate(@NotNull SecurityEvent.Type type, double sampleRate) {
+            if (!(sampleRate >= 0 && sampleRate <= 1)) {
+                throw new IllegalArgumentException("sampleRate must be between 0 and 1.");
+            }
+            this.sampleRates[type.ordinal()] = sampleRate;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of events of the given type delivered per second, 1000 by default.
+         * @param type Type of the events.
+         * @param perSecond Events per second, or {@link Integer#MAX_VALUE} for no limit.
+         * @return This builder.
+         */
+        public @NotNull Builder rateLimit(@NotNull SecurityEvent.Type type, int perSecond) {
+            if (perSecond < 0) {
+                throw new IllegalArgumentException("perSecond must not be negative.");
+            }
+            this.rateLimits[type.ordinal()] = perSecond;
+            return this;
+        }
+
+        /**
+         * Builds the channel.
+         * @return A new channel.
+         */
+        public @NotNull SecurityEvents build() {
+            return new SecurityEvents(this);
+        }
+    }
+
+}
@@ -1,21 +1,35 @@
 package com.koralix.security;
 
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.spec.SecretKeySpec;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
-import java.util.Map;import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 
 /**
  * Main class for handling security.
@@ -24,14 +38,35 @@ import java.util.concurrent.ConcurrentHashMap;
  * @since 1.0.0
  * @author JohanVonElectrum
  */
-public class SimpleSecurityProvider {
+public class SimpleSecurityProvider implements AutoCloseable {
+
+    /**
+     * Minimum size of a batch to split it across the batch pool.
+     */
+    static final int PARALLEL_THRESHOLD = 256;
+    private static final int BATCH_CHUNK = 64;
 
     private final long salt;
-    private final SecretKeySpec secretKey;
+    private final Hmac hmac;
     private final Expiration expiration;
-    private final Map<String, Instant> creationTimes = new ConcurrentHashMap<>();
-    private final Map<String, Long> chainIds = new ConcurrentHashMap<>();
+    private final long ttl;
+    private final TokenFormat tokenFormat;
+    private final int signatureLength;
+    private final RandomSource randomSource;
+    private final ChainStore chainStore;
+    private final long storeTimeout;
     private final Logger logger;
+    private final SecurityEvents events;
+    private final boolean ownsEvents;
+    private final Metrics metrics = new Metrics();
+    private final LongAdder[] eventCounters = new LongAdder[SecurityEvent.Type.values().length];
+    private final LongAdder verified;
+    private final LatencyHistogram verifyLatency;
+    private final @Nullable HidCache hidCache;
+    private final ForkJoinPool batchPool;
+    private final ThreadLocal<TokenParser> parsers = ThreadLocal.withInitial(TokenParser::new);
+    private final ThreadLocal<TokenWriter> writers = ThreadLocal.withInitial(TokenWriter::new);
+    private final StripedPool<HidHasher> hidHashers;
 
     /**
      * Creates a new security provider.
@@ -41,10 +76,7 @@ public class SimpleSecurityProvider {
      * @param logger Logger to use.
      */
     public SimpleSecurityProvider(@NotNull String key, long salt, @NotNull Expiration expiration, Logger logger) {
-        this.salt = salt;
-        secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-        this.expiration = expiration;
-        this.logger = logger;
+        this(builder(key, salt).expiration(expiration).logger(logger));
     }
 
     /**
@@ -54,25 +86,139 @@ public class SimpleSecurityProvider {
      * @param expiration Expiration time for the tokens.
      */
     public SimpleSecurityProvider(@NotNull String key, long salt, @NotNull Expiration expiration) {
-        this(key, salt, expiration, LoggerFactory.getLogger(SimpleSecurityProvider.class));
+        this(builder(key, salt).expiration(expiration));
+    }
+
+    private SimpleSecurityProvider(@NotNull Builder builder) {
+        this.salt = builder.salt;
+        this.hidHashers = new StripedPool<>(() -> {
+            try {
+                return new HidHasher(salt);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            hmac = Hmac.sha256(new SecretKeySpec(builder.key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        this.expiration = builder.expiration;
+        this.ttl = expiration.unit.equals(ChronoUnit.FOREVER) ? 0 : Duration.of(expiration.time, expiration.unit).getSeconds();
+        if (builder.tokenFormat == TokenFormat.BINARY && ttl > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The binary token format supports expirations up to " + Integer.MAX_VALUE + " seconds.");
+        }
+        this.tokenFormat = builder.tokenFormat;
+        this.signatureLength = builder.signatureLength;
+        this.randomSource = builder.randomSource;
+        this.chainStore = builder.chainStore != null
+                ? builder.chainStore
+                : new MemoryChainStore(builder.maxChains, ttl > 0 ? Duration.ofSeconds(ttl) : null);
+        this.storeTimeout = builder.storeTimeout.toNanos();
+        this.logger = builder.logger;
+        this.ownsEvents = builder.events == null;
+        this.events = builder.events != null
+                ? builder.events
+                : SecurityEvents.builder(SecurityEventSink.logging(builder.logger)).build();
+        this.verified = metrics.counter("tokens.verified");
+        for (SecurityEvent.Type type : SecurityEvent.Type.values()) {
+            eventCounters[type.ordinal()] = metrics.counter(type == SecurityEvent.Type.TOKEN_GENERATED
+                    ? "tokens.generated"
+                    : "tokens.rejected." + type.name().toLowerCase(Locale.ROOT));
+        }
+        this.verifyLatency = metrics.latency("verifyToken");
+        this.hidCache = builder.hidCacheSize > 0 ? new HidCache(builder.hidCacheSize, metrics) : null;
+        this.batchPool = builder.batchPool;
+    }
+
+    /**
+     * Creates a new builder for a security provider.
+     * @param key Key used to sign the tokens.
+     * @param salt Salt used to hash the uuid.
+     * @return A new builder.
+     */
+    public static @NotNull Builder builder(@NotNull String key, long salt) {
+        return new Builder(key, salt);
+    }
+
+    /**
+     * Gets the store of the token chains.
+     * @return The chain store.
+     */
+    public @NotNull ChainStore getChainStore() {
+        return chainStore;
+    }
+
+    /**
+     * Gets the metrics of this provider: the counters {@code tokens.generated}, {@code tokens.verified} and
+     * {@code tokens.rejected.<reason>} for each reason a token is rejected, and the latency {@code verifyToken} of
+     * {@link #verifyToken(String)} and {@link #getHidIfValid(String)}. With a
+     * {@link Builder#hidCacheSize(int) hid cache}, also the counters {@code hidCache.hits}, {@code hidCache.misses}
+     * and {@code hidCache.evictions}.
+     * @return The metrics.
+     */
+    public @NotNull Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the channel of the security events, with the number of events of each type.
+     * @return The security events.
+     */
+    public @NotNull SecurityEvents getEvents() {
+        return events;
     }
 
     /**
      * Gets the hashed id for the given uuid.
+     * The hashed id only depends on the uuid and the salt, so it is reused from the
+     * {@link Builder#hidCacheSize(int) hid cache} when enabled.
      * @param uuid UUID to hash.
      * @return Hashed id.
      * @throws NoSuchAlgorithmException If the algorithm is not supported.
      */
     public @NotNull String getHid(@NotNull UUID uuid) throws NoSuchAlgorithmException {
-        byte[] derivedSalt = ByteBuffer.allocate(32)
-                .putLong(salt)
-                .putLong(uuid.getLeastSignificantBits())
-                .putLong(uuid.getMostSignificantBits())
-                .putLong(uuid.getLeastSignificantBits() ^ uuid.getMostSignificantBits() ^ salt).array();
-        byte[] uuidBytes = ByteBuffer.allocate(16)
-                .putLong(uuid.getLeastSignificantBits())
-                .putLong(uuid.getMostSignificantBits()).array();
-        return CryptoUtils.sha256(uuidBytes, derivedSalt);
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if (hidCache == null) {
+            return hash(msb, lsb);
+        }
+
+        String hid = hidCache.get(msb, lsb);
+        if (hid == null) {
+            hid = hash(msb, lsb);
+            hidCache.put(msb, lsb, hid);
+        }
+        return hid;
+    }
+
+    /**
+     * Writes the raw hashed id for the given uuid, the 32 bytes that
+     * {@link #getHid(UUID)} encodes in Base64Url. Nothing is allocated and the hid cache is not used.
+     * @param uuid UUID to hash.
+     * @param dst Buffer where the hashed id is written.
+     * @param offset Offset where the hashed id is written.
+     * @throws IllegalArgumentException If there are less than 32 bytes available.
+     */
+    public void getRawHid(@NotNull UUID uuid, byte @NotNull [] dst, int offset) {
+        if (offset < 0 || dst.length - offset < TokenParser.HID_LENGTH) {
+            throw new IllegalArgumentException("The hashed id needs " + TokenParser.HID_LENGTH + " bytes.");
+        }
+        HidHasher hasher = hidHashers.acquire();
+        try {
+            hasher.hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), dst, offset);
+        } finally {
+            hidHashers.release(hasher);
+        }
+    }
+
+    private @NotNull String hash(long msb, long lsb) {
+        HidHasher hasher = hidHashers.acquire();
+        try {
+            return hasher.hash(msb, lsb);
+        } finally {
+            hidHashers.release(hasher);
+        }
     }
 
     /**
@@ -81,112 +227,510 @@ public class SimpleSecurityProvider {
      * @return A new token.
      */
     public @NotNull String generateToken(@NotNull String hid) {
-        long chainId = chainIds.computeIfAbsent(hid, k -> CryptoUtils.randomLong());
         Instant now = Instant.now();
-        String body = hid +
-                ":" +
-                chainId +
-                ":" +
-                now.getEpochSecond() +
-                "." +
-                String.format("%09d", now.getNano()) +
-                ":" +
-                (expiration.unit.equals(ChronoUnit.FOREVER) ? 0 : Duration.of(expiration.time, expiration.unit).getSeconds());
-        body = CryptoUtils.b64encode(body.getBytes(StandardCharsets.UTF_8));
+        TokenWriter writer = writers.get();
+        ChainState current;
+        ChainState next;
+        String token;
+        do {
+            current = chainStore.get(hid);
+            next = nextState(current, now);
+            token = writeToken(writer, hid, next);
+        } while (!chainStore.compareAndSet(hid, current, next));
+        record(SecurityEvent.Type.TOKEN_GENERATED, hid, next.chainId());
+        return token;
+    }
 
-        try {
-            String signature = CryptoUtils.encode(secretKey, body);
-            creationTimes.put(hid, now);
-            this.logger.info("Token generated for hid {} with chain id {} and creation time {}", hid, chainId, now);
-            return body + "." + signature;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Generates new tokens for several hashed ids, reading and updating their chains together.
+     * Large batches are signed in parallel in the {@link Builder#batchPool(ForkJoinPool) batch pool}.
+     * A hashed id given more than once gets the same token.
+     * <p>
+     * The chain store is waited for up to the {@link Builder#storeTimeout(Duration) store timeout}. A chain whose update
+     * fails or times out gets no token, and its previous token may no longer be valid.
+     * @param hids Hashed ids.
+     * @return The new tokens, in the order of the hashed ids, null where the chain could not be updated.
+     * @throws RuntimeException If the chains could not be read, in which case no chain was updated.
+     */
+    public @NotNull List<@Nullable String> generateTokens(@NotNull Collection<String> hids) {
+        long deadline = System.nanoTime() + storeTimeout;
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(hids));
+        int size = distinct.size();
+        List<ChainState> currents = await(chainStore.getAllAsync(distinct), deadline);
+        Instant now = Instant.now();
+        ChainState[] nexts = new ChainState[size];
+        String[] tokens = new String[size];
+        forEach(size, i -> {
+            nexts[i] = nextState(currents.get(i), now);
+            tokens[i] = writeToken(writers.get(), distinct.get(i), nexts[i]);
+        });
+
+        List<CompletableFuture<Boolean>> updates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            updates.add(chainStore.compareAndSetAsync(distinct.get(i), currents.get(i), nexts[i]));
+        }
+        Map<String, String> byHid = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String hid = distinct.get(i);
+            byHid.put(hid, completeUpdate(hid, updates.get(i), nexts[i], tokens[i], deadline));
+        }
+
+        List<String> result = new ArrayList<>(hids.size());
+        for (String hid : hids) {
+            result.add(byHid.get(hid));
         }
+        return result;
     }
 
     /**
-     * Verifies the given token.
+     * Verifies the given token, in any of the {@link TokenFormat token formats}.
      * @param token Token to verify.
      * @return True if the token is valid, false otherwise.
      */
     public boolean verifyToken(@NotNull String token) {
-        String[] parts = token.split("\\.");
-        if (parts.length != 2) {
-            this.logger.info("Token {} is invalid", token);
+        long start = System.nanoTime();
+        TokenParser parser = parsers.get();
+        boolean valid = verify(parser, parser.parse(token));
+        verifyLatency.recordSince(start);
+        return valid;
+    }
+
+    /**
+     * Gets the hashed id from the given token if it is valid.
+     * The token is valid if it is not expired, the signature is valid and the body is valid.
+     * @param token Token to get the hashed id from.
+     * @return Hashed id if the token is valid, empty otherwise.
+     */
+    public Optional<String> getHidIfValid(@NotNull String token) {
+        long start = System.nanoTime();
+        TokenParser parser = parsers.get();
+        ParsedToken parsed = parser.parse(token);
+        boolean valid = verify(parser, parsed);
+        verifyLatency.recordSince(start);
+        if (!valid) {
+            return Optional.empty();
+        }
+
+        return Optional.of(parsed.hid());
+    }
+
+    /**
+     * Verifies several tokens, reading their chains together.
+     * Large batches are parsed and their signatures checked in parallel in the
+     * {@link Builder#batchPool(ForkJoinPool) batch pool}. The result is the same as verifying the tokens one by one,
+     * in order.
+     * @param tokens Tokens to verify.
+     * @return Whether each token is valid, in the order of the tokens.
+     */
+    public @NotNull List<Boolean> verifyTokens(@NotNull Collection<String> tokens) {
+        ParsedToken[] verified = verifyAll(tokens);
+        List<Boolean> results = new ArrayList<>(verified.length);
+        for (ParsedToken parsed : verified) {
+            results.add(parsed != null);
+        }
+        return results;
+    }
+
+    /**
+     * Gets the hashed ids of several tokens if they are valid, reading their chains together.
+     * @param tokens Tokens to get the hashed ids from.
+     * @return The hashed id of each valid token, or empty, in the order of the tokens.
+     * @see #verifyTokens(Collection)
+     */
+    public @NotNull List<Optional<String>> getHidsIfValid(@NotNull Collection<String> tokens) {
+        ParsedToken[] verified = verifyAll(tokens);
+        List<Optional<String>> results = new ArrayList<>(verified.length);
+        for (ParsedToken parsed : verified) {
+            results.add(parsed == null ? Optional.empty() : Optional.of(parsed.hid()));
+        }
+        return results;
+    }
+
+    /**
+     * Closes the default security events, once their buffered events are delivered.
+     * Security events and chain stores given to the {@link Builder builder} are left open. A provider that is never
+     * closed holds no thread, it may only lose the events still buffered when the application exits.
+     */
+    @Override
+    public void close() {
+        if (ownsEvents) {
+            events.close();
+        }
+    }
+
+    @Contract("_, null -> false")
+    private boolean verify(@NotNull TokenParser parser, @Nullable ParsedToken parsed) {
+        if (parsed == null) {
+            record(SecurityEvent.Type.BAD_FORMAT, null, 0);
             return false;
         }
 
-        String body = new String(CryptoUtils.b64decode(parts[0]), StandardCharsets.UTF_8);
-        String[] bodyParts = body.split(":");
-        if (bodyParts.length != 4) {
-            this.logger.info("Token {} is invalid", token);
+        String hid = parsed.hid();
+        ChainState state = chainStore.get(hid);
+        if (state == null || state.chainId() != parsed.chainId()) {
+            record(SecurityEvent.Type.WRONG_CHAIN, hid, parsed.chainId());
             return false;
         }
 
-        String hid = bodyParts[0];
-        long chainId = Long.parseLong(bodyParts[1]);
-        if (!chainIds.containsKey(hid) || chainId != chainIds.get(hid)) {
-            this.logger.info("Someone tried to use a token from a different chain for hid {}", hid);
+        if (!parser.verifySignature(hmac, signatureLength)) {
+            record(SecurityEvent.Type.BAD_SIGNATURE, hid, parsed.chainId());
             return false;
         }
 
+        return verifyCreation(parsed, state, Instant.now());
+    }
+
+    /**
+     * Verifies the tokens of a batch.
+     * @return The parsed tokens, null where the token is invalid.
+     */
+    private @Nullable ParsedToken @NotNull [] verifyAll(@NotNull Collection<String> tokens) {
+        String[] batch = tokens.toArray(String[]::new);
+        ParsedToken[] parsed = new ParsedToken[batch.length];
+        boolean[] signed = new boolean[batch.length];
+        // The signature is checked right after parsing, while the parser of the thread still holds the token.
+        forEach(batch.length, i -> {
+            TokenParser parser = parsers.get();
+            parsed[i] = parser.parse(batch[i]);
+            signed[i] = parsed[i] != null && parser.verifySignature(hmac, signatureLength);
+        });
+
+        LinkedHashSet<String> distinct = new LinkedHashSet<>();
+        for (ParsedToken token : parsed) {
+            if (token != null) {
+                distinct.add(token.hid());
+            }
+        }
+        List<String> hids = new ArrayList<>(distinct);
+        List<ChainState> fetched = await(chainStore.getAllAsync(hids), System.nanoTime() + storeTimeout);
+        Map<String, ChainState> states = new HashMap<>(hids.size() * 2);
+        for (int i = 0; i < hids.size(); i++) {
+            states.put(hids.get(i), fetched.get(i));
+        }
+
+        Instant now = Instant.now();
+        for (int i = 0; i < batch.length; i++) {
+            ParsedToken token = parsed[i];
+            if (token == null) {
+                record(SecurityEvent.Type.BAD_FORMAT, null, 0);
+                continue;
+            }
+
+            String hid = token.hid();
+            ChainState state = states.containsKey(hid) ? states.get(hid) : chainStore.get(hid);
+            if (state == null || state.chainId() != token.chainId()) {
+                record(SecurityEvent.Type.WRONG_CHAIN, hid, token.chainId());
+                parsed[i] = null;
+            } else if (!signed[i]) {
+                record(SecurityEvent.Type.BAD_SIGNATURE, hid, token.chainId());
+                parsed[i] = null;
+            } else if (!verifyCreation(token, state, now)) {
+                // The chain was broken or changed, later tokens of the same hid read it again.
+                states.remove(hid);
+                parsed[i] = null;
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Completes the update of a chain of {@link #generateTokens(Collection)}.
+     * @return The token of the update, a new token if the chain changed since it was read, or null if the chain store
+     * failed.
+     */
+    private @Nullable String completeUpdate(@NotNull String hid, @NotNull CompletableFuture<Boolean> update,
+                                            @NotNull ChainState next, @NotNull String token, long deadline) {
         try {
-            if (!CryptoUtils.verify(secretKey, parts[0], parts[1])) {
-                this.logger.info("Token {} has an invalid signature", token);
+            if (await(update, deadline)) {
+                record(SecurityEvent.Type.TOKEN_GENERATED, hid, next.chainId());
+                return token;
+            }
+            // The chain changed since it was read, generate this one again on its own.
+            return generateToken(hid);
+        } catch (RuntimeException e) {
+            // Other chains of the batch may already be updated, so only this token is missing.
+            logger.warn("Could not update the chain of {}.", hid, e);
+            return null;
+        }
+    }
+
+    /**
+     * Verifies that the token is not expired and is the latest of its chain, breaking the chain otherwise.
+     */
+    private boolean verifyCreation(@NotNull ParsedToken parsed, @NotNull ChainState state, @NotNull Instant now) {
+        String hid = parsed.hid();
+        boolean expired = parsed.ttl() > 0 && now.isAfter(Instant.ofEpochSecond(parsed.epochSecond() + parsed.ttl(), parsed.nanos()));
+        while (expired || state.creationSeconds() != parsed.epochSecond() || state.creationNanos() != parsed.nanos()) {
+            // Only the state that was checked is removed, a concurrent rotation is checked again.
+            if (chainStore.compareAndSet(hid, state, null)) {
+                record(expired ? SecurityEvent.Type.EXPIRED : SecurityEvent.Type.REPLAY, hid, parsed.chainId());
                 return false;
             }
-        } catch (Exception e) {
+            state = chainStore.get(hid);
+            if (state == null || state.chainId() != parsed.chainId()) {
+                return false;
+            }
+        }
+
+        verified.increment();
+        return true;
+    }
+
+    /**
+     * Counts the event and publishes it to the security events.
+     */
+    private void record(@NotNull SecurityEvent.Type type, @Nullable String hid, long chainId) {
+        eventCounters[type.ordinal()].increment();
+        events.publish(type, hid, chainId);
+    }
+
+    private @NotNull ChainState nextState(@Nullable ChainState current, @NotNull Instant now) {
+        return new ChainState(current != null ? current.chainId() : randomSource.nextLong(), now.getEpochSecond(), now.getNano());
+    }
+
+    private @NotNull String writeToken(@NotNull TokenWriter writer, @NotNull String hid, @NotNull ChainState state) {
+        return tokenFormat == TokenFormat.BINARY
+                ? writer.writeBinary(hid, state.chainId(), state.creationSeconds(), state.creationNanos(), (int) ttl, hmac, signatureLength)
+                : writer.writeText(hid, state.chainId(), state.creationSeconds(), state.creationNanos(), ttl, hmac);
+    }
+
+    /**
+     * Runs the action for each index of a batch, splitting large batches across the batch pool.
+     */
+    private void forEach(int size, @NotNull IntConsumer action) {
+        if (size < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+        } else {
+            batchPool.invoke(new BatchAction(0, size, action));
+        }
+    }
+
+    /**
+     * Waits for the chain store until the given {@link System#nanoTime()} deadline.
+     */
+    private static <T> T await(@NotNull CompletableFuture<T> future, long deadline) {
+        try {
+            return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RuntimeException("The chain store did not answer in time.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
+    }
 
-        String[] timeParts = bodyParts[2].split("\\.");
-        if (timeParts.length != 2) {
-            this.logger.info("Token {} is invalid", token);
-            return false;
+    private static final class BatchAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient IntConsumer action;
+
+        private BatchAction(int from, int to, @NotNull IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
         }
-        long seconds = Long.parseLong(timeParts[0]);
-        int nano = Integer.parseInt(timeParts[1]);
-        Instant instant = Instant.ofEpochSecond(seconds, nano);
-        long expirationTime = Long.parseLong(bodyParts[3]);
-        if ((expirationTime > 0 && Instant.now().isAfter(instant.plus(expirationTime, ChronoUnit.SECONDS))) ||
-                (!creationTimes.containsKey(hid) || !instant.equals(creationTimes.get(hid)))
-        ) {
-            creationTimes.remove(hid);
-            chainIds.remove(hid);
-            this.logger.info("Token chain for hid {} was broken", hid);
-            return false;
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_CHUNK) {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchAction(from, middle, action), new BatchAction(middle, to, action));
+            }
         }
+    }
 
-        return true;
+    /**
+     * Format of the generated tokens. Tokens of every format are accepted on verification.
+     */
+    public enum TokenFormat {
+        /**
+         * {@code b64(hid:chainId:seconds.nanos:ttl).b64(signature)}, the original format.
+         */
+        TEXT,
+        /**
+         * Versioned binary layout with fixed offsets: version, raw hid, chain id, seconds, nanos, ttl and signature,
+         * encoded as a single Base64Url string. It is about 30% shorter than {@link #TEXT} with the whole signature.
+         * Requires hids created by {@link #getHid(UUID)}.
+         */
+        BINARY
     }
 
     /**
-     * Gets the hashed id from the given token if it is valid.
-     * The token is valid if it is not expired, the signature is valid and the body is valid.
-     * @param token Token to get the hashed id from.
-     * @return Hashed id if the token is valid, empty otherwise.
+     * Builder for {@link SimpleSecurityProvider} instances.
      */
-    public Optional<String> getHidIfValid(@NotNull String token) {
-        if (!verifyToken(token)) {
-            return Optional.empty();
+    public static final class Builder {
+
+        private final String key;
+        private final long salt;
+        private Expiration expiration = Expiration.ONE_HOUR;
+        private Logger logger = LoggerFactory.getLogger(SimpleSecurityProvider.class);
+        private TokenFormat tokenFormat = TokenFormat.TEXT;
+        private int signatureLength = Hmac.LENGTH;
+        private RandomSource randomSource = RandomSource.shared();
+        private @Nullable ChainStore chainStore;
+        private Duration storeTimeout = Duration.ofSeconds(5);
+        private int maxChains = Integer.MAX_VALUE;
+        private ForkJoinPool batchPool = ForkJoinPool.commonPool();
+        private @Nullable SecurityEvents events;
+        private int hidCacheSize;
+
+        private Builder(@NotNull String key, long salt) {
+            this.key = key;
+            this.salt = salt;
         }
 
-        return Optional.ofNullable(getHidFromToken(token));
-    }
+        /**
+         * Sets the expiration time for the tokens, {@link Expiration#ONE_HOUR} by default.
+         * @param expiration Expiration time.
+         * @return This builder.
+         */
+        public @NotNull Builder expiration(@NotNull Expiration expiration) {
+            this.expiration = expiration;
+            return this;
+        }
 
-    private static @Nullable String getHidFromToken(@NotNull String token) {
-        String[] parts = token.split("\\.");
-        if (parts.length != 2) {
-            return null;
+        /**
+         * Sets the logger of the default {@link #events(SecurityEvents) security events} and of the chain store failures
+         * of {@link #generateTokens(Collection)}.
+         * @param logger Logger.
+         * @return This builder.
+         */
+        public @NotNull Builder logger(@NotNull Logger logger) {
+            this.logger = logger;
+            return this;
         }
 
-        String body = new String(CryptoUtils.b64decode(parts[0]), StandardCharsets.UTF_8);
-        String[] bodyParts = body.split(":");
-        if (bodyParts.length != 4) {
-            return null;
+        /**
+         * Sets the format of the generated tokens, {@link TokenFormat#TEXT} by default.
+         * @param tokenFormat Token format.
+         * @return This builder.
+         */
+        public @NotNull Builder tokenFormat(@NotNull TokenFormat tokenFormat) {
+            this.tokenFormat = tokenFormat;
+            return this;
+        }
+
+        /**
+         * Sets the length of the signature of {@link TokenFormat#BINARY} tokens, the whole signature by default.
+         * Binary tokens with a different signature length are rejected, so changing it invalidates all binary tokens.
+         * @param signatureLength Length in bytes, between {@link Hmac#MIN_TRUNCATED_LENGTH} and {@link Hmac#LENGTH}.
+         * @return This builder.
+         */
+        public @NotNull Builder signatureLength(int signatureLength) {
+            if (signatureLength < Hmac.MIN_TRUNCATED_LENGTH || signatureLength > Hmac.LENGTH) {
+                throw new IllegalArgumentException("signatureLength must be between " + Hmac.MIN_TRUNCATED_LENGTH + " and " + Hmac.LENGTH + ".");
+            }
+            this.signatureLength = signatureLength;
+            return this;
+        }
+
+        /**
+         * Sets the source of the random chain ids, {@link RandomSource#shared()} by default.
+         * @param randomSource Random source.
+         * @return This builder.
+         */
+        public @NotNull Builder randomSource(@NotNull RandomSource randomSource) {
+            this.randomSource = randomSource;
+            return this;
+        }
+
+        /**
+         * Sets the store of the token chains.
+         * By default, a {@link MemoryChainStore} limited to {@link #maxChains(int)} chains and expiring chains
+         * with the tokens is used.
+         * @param chainStore Chain store.
+         * @return This builder.
+         */
+        public @NotNull Builder chainStore(@NotNull ChainStore chainStore) {
+            this.chainStore = chainStore;
+            return this;
         }
 
-        return bodyParts[0];
+        /**
+         * Sets how long the batch methods wait for the asynchronous reads and updates of the chain store, 5 seconds by
+         * default. The blocking methods of the chain store use its own timeouts.
+         * @param storeTimeout Store timeout.
+         * @return This builder.
+         */
+        public @NotNull Builder storeTimeout(@NotNull Duration storeTimeout) {
+            if (storeTimeout.isNegative() || storeTimeout.isZero()) {
+                throw new IllegalArgumentException("storeTimeout must be positive.");
+            }
+            this.storeTimeout = storeTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chains of the default chain store, unlimited by default.
+         * When full, the oldest of a few sampled chains is evicted, which is not always the oldest chain.
+         * @param maxChains Maximum number of chains.
+         * @return This builder.
+         */
+        public @NotNull Builder maxChains(int maxChains) {
+            if (maxChains < 1) {
+                throw new IllegalArgumentException("maxChains must be positive.");
+            }
+            this.maxChains = maxChains;
+            return this;
+        }
+
+        /**
+         * Sets the pool where large batches of {@link #generateTokens(Collection)} and {@link #verifyTokens(Collection)}
+         * are split, {@link ForkJoinPool#commonPool()} by default.
+         * @param batchPool Fork join pool.
+         * @return This builder.
+         */
+        public @NotNull Builder batchPool(@NotNull ForkJoinPool batchPool) {
+            this.batchPool = batchPool;
+            return this;
+        }
+
+        /**
+         * Sets the number of hashed ids of {@link #getHid(UUID)} kept in memory, so that players that join again skip
+         * the hashing. Disabled by default. The least recently read hashed ids are evicted first, approximately.
+         * @param hidCacheSize Maximum number of hashed ids, or 0 to disable the cache.
+         * @return This builder.
+         */
+        public @NotNull Builder hidCacheSize(int hidCacheSize) {
+            if (hidCacheSize < 0 || hidCacheSize > HidCache.MAX_SIZE) {
+                throw new IllegalArgumentException("hidCacheSize must be between 0 and " + HidCache.MAX_SIZE + ".");
+            }
+            this.hidCacheSize = hidCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the channel of the security events.
+         * By default, the events are logged at INFO level by the {@link #logger(Logger) logger}, up to 1000 of each
+         * type per second, until the provider is {@link SimpleSecurityProvider#close() closed}. The given channel is not
+         * closed with the provider.
+         * @param events Security events.
+         * @return This builder.
+         */
+        public @NotNull Builder events(@NotNull SecurityEvents events) {
+            this.events = events;
+            return this;
+        }
+
+        /**
+         * Creates the security provider.
+         * @return A new security provider.
+         */
+        public @NotNull SimpleSecurityProvider build() {
+            return new SimpleSecurityProvider(this);
+        }
     }
 
     /**
@@ -0,0 +1,84 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Small pool of objects that are expensive to create and must only be used by one thread at a time, like an
+ * initialised {@link javax.crypto.Mac} or a {@link java.security.MessageDigest}.
+ * <p>
+ * A {@link ThreadLocal} loses its object with the thread, so with a virtual thread per task every task would create a
+ * new one. The pool is shared by all the threads instead. Each thread probes a few slots from its own stripe and takes
+ * the first object found, so a platform thread usually gets back the object it released. A new object is created when
+ * the probed slots are empty, and a released object is dropped when they are full.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class StripedPool<T> {
+
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final int probes;
+    private final Supplier<? extends T> factory;
+
+    /**
+     * Creates a pool of twice as many slots as processors.
+     * @param factory Creates the objects when the pool has none.
+     */
+    StripedPool(@NotNull Supplier<? extends T> factory) {
+        this(Runtime.getRuntime().availableProcessors() * 2, factory);
+    }
+
+    /**
+     * Creates a pool.
+     * @param size Number of slots, rounded up to a power of two.
+     * @param factory Creates the objects when the pool has none.
+     */
+    StripedPool(int size, @NotNull Supplier<? extends T> factory) {
+        int capacity = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.probes = Math.min(PROBES, capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * Takes an object from the pool, or creates one.
+     * @return An object only used by the caller until released.
+     */
+    @NotNull T acquire() {
+        int stripe = stripe();
+        for (int i = 0; i < probes; i++) {
+            int index = (stripe + i) & mask;
+            T value = slots.get(index);
+            if (value != null && slots.compareAndSet(index, value, null)) {
+                return value;
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * Gives an object back to the pool, the caller must not use it anymore.
+     * @param value Object taken with {@link #acquire()}.
+     */
+    void release(@NotNull T value) {
+        int stripe = stripe();
+        for (int i = 0; i < probes; i++) {
+            int index = (stripe + i) & mask;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, value)) {
+                return;
+            }
+        }
+    }
+
+    private static int stripe() {
+        return (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32);
+    }
+
+}
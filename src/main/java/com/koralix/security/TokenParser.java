@@ -0,0 +1,244 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single pass token parser.
+ * The token is decoded into buffers reused between calls, so an instance must only be used by one thread at a time.
+ * The signature of the last parsed token can be checked with {@link #verifySignature(Hmac, int)}.
+ * <p>
+ * Two formats are accepted:
+ * <ul>
+ *     <li>Text: {@code b64(hid:chainId:seconds.nanos:ttl).b64(signature)}, signed over the first Base64Url part.</li>
+ *     <li>Binary: {@code b64(version hid chainId seconds nanos ttl signature)} with fixed offsets, see {@link #BINARY_VERSION}.</li>
+ * </ul>
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class TokenParser {
+
+    /**
+     * Version byte of the binary format.
+     * The layout is the version, the 32 byte raw hid, the 8 byte chain id, the 8 byte epoch seconds,
+     * the 4 byte nanos, the 4 byte ttl in seconds and the signature, possibly truncated. Numbers are big endian.
+     */
+    static final byte BINARY_VERSION = 2;
+    /**
+     * Length of a raw hid, the SHA256 of the uuid.
+     */
+    static final int HID_LENGTH = 32;
+    static final int CHAIN_ID_OFFSET = 1 + HID_LENGTH;
+    static final int SECONDS_OFFSET = CHAIN_ID_OFFSET + Long.BYTES;
+    static final int NANOS_OFFSET = SECONDS_OFFSET + Long.BYTES;
+    static final int TTL_OFFSET = NANOS_OFFSET + Integer.BYTES;
+    static final int BINARY_HEADER_LENGTH = TTL_OFFSET + Integer.BYTES;
+
+    static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private byte[] token = new byte[256];
+    private byte[] body = new byte[192];
+    private final byte[] signature = new byte[Hmac.LENGTH + 3];
+    private final byte[] hid = new byte[(HID_LENGTH + 2) / 3 * 4];
+    private byte @Nullable [] signed;
+    private int signedLength;
+    private byte[] signatureSource = signature;
+    private int signatureOffset;
+    private int signatureLength;
+    private boolean malformed;
+
+    /**
+     * Parses the given token, in any of the accepted formats.
+     * @param token Token to parse.
+     * @return The token fields, or null if the token is malformed.
+     */
+    @Nullable ParsedToken parse(@NotNull String token) {
+        signed = null;
+
+        int length = token.length();
+        if (this.token.length < length) {
+            this.token = new byte[length];
+            this.body = new byte[length * 3 / 4 + 3];
+        }
+
+        int separator = -1;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c > 0x7F) {
+                return null;
+            }
+            if (c == '.') {
+                if (separator != -1) {
+                    return null;
+                }
+                separator = i;
+            }
+            this.token[i] = (byte) c;
+        }
+
+        return separator == -1 ? parseBinary(length) : parseText(length, separator);
+    }
+
+    /**
+     * Verifies the signature of the last token successfully parsed.
+     * Text tokens always carry the whole signature, binary tokens must carry exactly the expected length.
+     * @param hmac HMAC used to sign the tokens.
+     * @param binarySignatureLength Expected signature length of binary tokens.
+     * @return True if the signature is valid, false otherwise.
+     */
+    boolean verifySignature(@NotNull Hmac hmac, int binarySignatureLength) {
+        if (signed == null) {
+            throw new IllegalStateException("No token has been parsed.");
+        }
+        int expectedLength = signed == token ? Hmac.LENGTH : binarySignatureLength;
+        return signatureLength == expectedLength &&
+                hmac.verify(signed, 0, signedLength, signatureSource, signatureOffset, signatureLength);
+    }
+
+    private @Nullable ParsedToken parseText(int length, int separator) {
+        if (length - separator - 1 > (signature.length / 3) * 4) {
+            return null;
+        }
+
+        int bodyLength = CryptoUtils.b64decode(this.token, 0, separator, body, 0);
+        int signatureLength = CryptoUtils.b64decode(this.token, separator + 1, length - separator - 1, signature, 0);
+        if (bodyLength < 0 || signatureLength < 0) {
+            return null;
+        }
+
+        ParsedToken parsed = parseBody(bodyLength);
+        if (parsed != null) {
+            this.signed = token;
+            this.signedLength = separator;
+            this.signatureSource = signature;
+            this.signatureOffset = 0;
+            this.signatureLength = signatureLength;
+        }
+        return parsed;
+    }
+
+    private @Nullable ParsedToken parseBinary(int length) {
+        if (length > (BINARY_HEADER_LENGTH + Hmac.LENGTH + 2) / 3 * 4) {
+            return null;
+        }
+
+        int decoded = CryptoUtils.b64decode(token, 0, length, body, 0);
+        if (decoded < BINARY_HEADER_LENGTH + Hmac.MIN_TRUNCATED_LENGTH || decoded > BINARY_HEADER_LENGTH + Hmac.LENGTH ||
+                body[0] != BINARY_VERSION) {
+            return null;
+        }
+
+        int nanos = (int) INT.get(body, NANOS_OFFSET);
+        int ttl = (int) INT.get(body, TTL_OFFSET);
+        if (nanos < 0 || nanos > 999_999_999 || ttl < 0) {
+            return null;
+        }
+
+        int hidLength = CryptoUtils.b64encode(body, 1, HID_LENGTH, true, hid, 0);
+        this.signed = body;
+        this.signedLength = BINARY_HEADER_LENGTH;
+        this.signatureSource = body;
+        this.signatureOffset = BINARY_HEADER_LENGTH;
+        this.signatureLength = decoded - BINARY_HEADER_LENGTH;
+        return new ParsedToken(
+                new String(hid, 0, hidLength, StandardCharsets.ISO_8859_1),
+                (long) LONG.get(body, CHAIN_ID_OFFSET),
+                (long) LONG.get(body, SECONDS_OFFSET),
+                nanos,
+                ttl
+        );
+    }
+
+    /**
+     * Parses {@code hid:chainId:seconds.nanos:ttl}.
+     */
+    private @Nullable ParsedToken parseBody(int length) {
+        int hidEnd = indexOf(':', 0, length);
+        if (hidEnd <= 0) {
+            return null;
+        }
+        int chainEnd = indexOf(':', hidEnd + 1, length);
+        if (chainEnd < 0) {
+            return null;
+        }
+        int secondsEnd = indexOf('.', chainEnd + 1, length);
+        if (secondsEnd < 0) {
+            return null;
+        }
+        int nanosEnd = indexOf(':', secondsEnd + 1, length);
+        if (nanosEnd < 0 || nanosEnd - secondsEnd - 1 > 9) {
+            return null;
+        }
+
+        malformed = false;
+        long chainId = parseLong(hidEnd + 1, chainEnd);
+        long seconds = parseLong(chainEnd + 1, secondsEnd);
+        long nanos = parseLong(secondsEnd + 1, nanosEnd);
+        long ttl = parseLong(nanosEnd + 1, length);
+        if (malformed || nanos < 0) {
+            return null;
+        }
+
+        return new ParsedToken(decodeHid(hidEnd), chainId, seconds, (int) nanos, ttl);
+    }
+
+    /**
+     * Decodes the hid of a text body as UTF-8, like the tokens of {@link TokenWriter#writeText} and of 1.0.0 are
+     * written. The hids of {@link SimpleSecurityProvider#getHid} are ASCII and take the Latin-1 fast path.
+     */
+    private @NotNull String decodeHid(int length) {
+        for (int i = 0; i < length; i++) {
+            if (body[i] < 0) {
+                return new String(body, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(body, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (body[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a decimal long as {@link Long#parseLong(String)} does, flagging the body as malformed on failure.
+     */
+    private long parseLong(int from, int to) {
+        boolean negative = from < to && body[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i >= to) {
+            malformed = true;
+            return 0;
+        }
+
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = body[i] - '0';
+            if (digit < 0 || digit > 9 || value < multiplyLimit) {
+                malformed = true;
+                return 0;
+            }
+            value *= 10;
+            if (value < limit + digit) {
+                malformed = true;
+                return 0;
+            }
+            value -= digit;
+        }
+        return negative ? value : -value;
+    }
+
+}
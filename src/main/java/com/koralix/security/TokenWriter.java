@@ -0,0 +1,165 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.koralix.security.TokenParser.BINARY_HEADER_LENGTH;
+import static com.koralix.security.TokenParser.BINARY_VERSION;
+import static com.koralix.security.TokenParser.CHAIN_ID_OFFSET;
+import static com.koralix.security.TokenParser.HID_LENGTH;
+import static com.koralix.security.TokenParser.INT;
+import static com.koralix.security.TokenParser.LONG;
+import static com.koralix.security.TokenParser.NANOS_OFFSET;
+import static com.koralix.security.TokenParser.SECONDS_OFFSET;
+import static com.koralix.security.TokenParser.TTL_OFFSET;
+
+/**
+ * Token writer, the counterpart of {@link TokenParser}.
+ * The token is encoded into buffers reused between calls, so an instance must only be used by one thread at a time.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class TokenWriter {
+
+    /**
+     * Maximum number of chars of a decimal long, including the sign.
+     */
+    private static final int MAX_LONG_DIGITS = 20;
+
+    private final byte[] binary = new byte[BINARY_HEADER_LENGTH + Hmac.LENGTH];
+    private final byte[] encoded = new byte[(BINARY_HEADER_LENGTH + Hmac.LENGTH + 2) / 3 * 4];
+    private final byte[] hid = new byte[(HID_LENGTH + 2) / 3 * 4];
+    private final byte[] canonicalHid = new byte[(HID_LENGTH + 2) / 3 * 4];
+    private byte[] body = new byte[128];
+    private byte[] text = new byte[256];
+    private final byte[] signature = new byte[Hmac.LENGTH];
+
+    /**
+     * Writes a token in the text format, {@code b64(hid:chainId:seconds.nanos:ttl).b64(signature)}.
+     * @param hid Hashed id.
+     * @param chainId Id of the token chain.
+     * @param epochSecond Creation time, seconds since the epoch.
+     * @param nanos Creation time, nanoseconds of the second.
+     * @param ttl Time to live in seconds, 0 if the token does not expire.
+     * @param hmac HMAC used to sign the token.
+     * @return The token.
+     */
+    @NotNull String writeText(@NotNull String hid, long chainId, long epochSecond, int nanos, long ttl, @NotNull Hmac hmac) {
+        int hidLength = hid.length();
+        ensureBodyCapacity(hidLength * 3 + 3 * MAX_LONG_DIGITS + 9 + 4);
+
+        int position = 0;
+        for (int i = 0; i < hidLength; i++) {
+            char c = hid.charAt(i);
+            if (c > 0x7F) {
+                byte[] utf8 = hid.getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(utf8, 0, body, 0, utf8.length);
+                position = utf8.length;
+                break;
+            }
+            body[position++] = (byte) c;
+        }
+        body[position++] = ':';
+        position = writeLong(body, position, chainId);
+        body[position++] = ':';
+        position = writeLong(body, position, epochSecond);
+        body[position++] = '.';
+        for (int i = position + 8; i >= position; i--) {
+            body[i] = (byte) ('0' + nanos % 10);
+            nanos /= 10;
+        }
+        position += 9;
+        body[position++] = ':';
+        position = writeLong(body, position, ttl);
+
+        int encodedBodyLength = (position + 2) / 3 * 4;
+        int length = encodedBodyLength + 1 + (Hmac.LENGTH + 2) / 3 * 4;
+        if (text.length < length) {
+            text = new byte[length];
+        }
+        CryptoUtils.b64encode(body, 0, position, true, text, 0);
+        text[encodedBodyLength] = '.';
+        hmac.sign(text, 0, encodedBodyLength, signature, 0);
+        CryptoUtils.b64encode(signature, 0, Hmac.LENGTH, true, text, encodedBodyLength + 1);
+        return new String(text, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes a token in the binary format.
+     * @param hid Hashed id, the padded Base64Url of a 32 byte hash.
+     * @param chainId Id of the token chain.
+     * @param epochSecond Creation time, seconds since the epoch.
+     * @param nanos Creation time, nanoseconds of the second.
+     * @param ttl Time to live in seconds, 0 if the token does not expire.
+     * @param hmac HMAC used to sign the token.
+     * @param signatureLength Length of the signature, it is truncated if shorter than {@link Hmac#LENGTH}.
+     * @return The token.
+     */
+    @NotNull String writeBinary(@NotNull String hid, long chainId, long epochSecond, int nanos, int ttl, @NotNull Hmac hmac, int signatureLength) {
+        int hidLength = hid.length();
+        if (hidLength != this.hid.length) {
+            throw new IllegalArgumentException("The binary token format requires a hid created by getHid.");
+        }
+        for (int i = 0; i < hidLength; i++) {
+            char c = hid.charAt(i);
+            this.hid[i] = c > 0x7F ? (byte) '?' : (byte) c;
+        }
+        // The parser gives back the canonical encoding of the hash, any other spelling would look up another chain.
+        if (CryptoUtils.b64decode(this.hid, 0, hidLength, binary, 1) != HID_LENGTH) {
+            throw new IllegalArgumentException("The binary token format requires a hid created by getHid.");
+        }
+        CryptoUtils.b64encode(binary, 1, HID_LENGTH, true, canonicalHid, 0);
+        if (!Arrays.equals(this.hid, canonicalHid)) {
+            throw new IllegalArgumentException("The binary token format requires a hid created by getHid.");
+        }
+
+        binary[0] = BINARY_VERSION;
+        LONG.set(binary, CHAIN_ID_OFFSET, chainId);
+        LONG.set(binary, SECONDS_OFFSET, epochSecond);
+        INT.set(binary, NANOS_OFFSET, nanos);
+        INT.set(binary, TTL_OFFSET, ttl);
+        hmac.sign(binary, 0, BINARY_HEADER_LENGTH, binary, BINARY_HEADER_LENGTH);
+
+        int length = CryptoUtils.b64encode(binary, 0, BINARY_HEADER_LENGTH + signatureLength, false, encoded, 0);
+        return new String(encoded, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private void ensureBodyCapacity(int capacity) {
+        if (body.length < capacity) {
+            body = new byte[capacity];
+        }
+    }
+
+    /**
+     * Writes the decimal ASCII representation of the given long.
+     * @return Position after the last written digit.
+     */
+    private static int writeLong(byte @NotNull [] buffer, int position, long value) {
+        if (value == 0) {
+            buffer[position] = '0';
+            return position + 1;
+        }
+
+        // Work with the negative value, it can represent Long.MIN_VALUE.
+        boolean negative = value < 0;
+        long remaining = negative ? value : -value;
+        int digits = 0;
+        for (long v = remaining; v != 0; v /= 10) {
+            digits++;
+        }
+        if (negative) {
+            buffer[position++] = '-';
+        }
+
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        }
+        return end;
+    }
+
+}
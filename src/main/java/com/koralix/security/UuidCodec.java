@@ -0,0 +1,88 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Utility class for decoding the undashed UUIDs used by Mojang, e.g. {@code 4566e69fc90748ee8d71d7ba5aa00d20}.
+ * The hex digits are decoded straight into the two longs of the UUID without intermediate strings.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+public final class UuidCodec {
+
+    private static final int UNDASHED_LENGTH = 32;
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private UuidCodec() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Decodes an undashed UUID.
+     * @param id 32 hex digits.
+     * @return Decoded UUID.
+     * @throws IllegalArgumentException If the id is not 32 hex digits.
+     */
+    public static @NotNull UUID fromUndashed(@NotNull CharSequence id) {
+        if (id.length() != UNDASHED_LENGTH) {
+            throw new IllegalArgumentException("Invalid undashed UUID length: " + id.length());
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 16; i++) {
+            msb = (msb << 4) | hexValue(id.charAt(i));
+        }
+        for (int i = 16; i < UNDASHED_LENGTH; i++) {
+            lsb = (lsb << 4) | hexValue(id.charAt(i));
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Decodes an undashed UUID from ASCII bytes.
+     * @param bytes Buffer containing the id.
+     * @param offset Offset of the first of the 32 hex digits.
+     * @return Decoded UUID.
+     * @throws IllegalArgumentException If the region is not 32 hex digits.
+     */
+    public static @NotNull UUID fromUndashed(byte @NotNull [] bytes, int offset) {
+        if (offset < 0 || bytes.length - offset < UNDASHED_LENGTH) {
+            throw new IllegalArgumentException("Invalid undashed UUID length: " + Math.max(0, bytes.length - offset));
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 16; i++) {
+            msb = (msb << 4) | hexValue((char) (bytes[offset + i] & 0xFF));
+        }
+        for (int i = 16; i < UNDASHED_LENGTH; i++) {
+            lsb = (lsb << 4) | hexValue((char) (bytes[offset + i] & 0xFF));
+        }
+        return new UUID(msb, lsb);
+    }
+
+    private static long hexValue(char c) {
+        int value = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid hex digit: " + c);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Default executors used when the caller does not provide one.
+ * Java 21+ version of this class, every task runs in its own virtual thread.
+ *
+ * @since 1.1.0
+ * @author JohanVonElectrum
+ */
+final class DefaultExecutors {
+
+    private DefaultExecutors() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Creates an executor that runs each task in a new virtual thread.
+     * @return A new executor service.
+     */
+    static @NotNull ExecutorService newPerTaskExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mc-simple-security-", 1).factory());
+    }
+
+    /**
+     * Creates a scheduler with a single daemon platform thread, that only hands delayed tasks over to other executors.
+     * @return A new scheduled executor service.
+     */
+    static @NotNull ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("mc-simple-security-scheduler-", 1).factory());
+    }
+}
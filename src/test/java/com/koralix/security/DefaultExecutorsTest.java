@@ -0,0 +1,53 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefaultExecutorsTest {
+
+    /**
+     * Whether the classes come from the multi-release jar on Java 21+, as in the testJava21 task.
+     */
+    private static final boolean VIRTUAL = Boolean.getBoolean("multiRelease") && Runtime.version().feature() >= 21;
+
+    @Test
+    void runsEachTaskInItsOwnThread() throws Exception {
+        ExecutorService executor = DefaultExecutors.newPerTaskExecutor();
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            assertTrue(thread.isDaemon());
+            assertTrue(thread.getName().startsWith("mc-simple-security-"), thread.getName());
+            assertEquals(VIRTUAL, isVirtual(thread));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void schedulesOnAPlatformThread() throws Exception {
+        ScheduledExecutorService scheduler = DefaultExecutors.newScheduler();
+        try {
+            Thread thread = scheduler.schedule(Thread::currentThread, 1, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+            assertTrue(thread.isDaemon());
+            assertTrue(thread.getName().startsWith("mc-simple-security-scheduler-"), thread.getName());
+            assertFalse(isVirtual(thread));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        if (Runtime.version().feature() < 21) {
+            return false;
+        }
+        return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+}
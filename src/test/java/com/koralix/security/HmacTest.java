@@ -0,0 +1,34 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class HmacTest {
+
+    @Test
+    void verifiesTruncatedSignaturesAlikeInBothVariants() throws Exception {
+        Hmac hmac = Hmac.sha256(new SecretKeySpec("hmac test key".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] data = "signed data".getBytes(StandardCharsets.UTF_8);
+        byte[] signature = new byte[Hmac.LENGTH];
+        hmac.sign(data, 0, data.length, signature, 0);
+
+        for (int length = 0; length <= Hmac.LENGTH; length++) {
+            boolean expected = length >= Hmac.MIN_TRUNCATED_LENGTH;
+            assertEquals(expected, hmac.verify(data, 0, data.length, signature, 0, length), "array, " + length + " bytes");
+            assertEquals(expected, hmac.verify(ByteBuffer.wrap(data), ByteBuffer.wrap(signature, 0, length)), "buffer, " + length + " bytes");
+        }
+
+        byte[] tampered = Arrays.copyOf(signature, Hmac.MIN_TRUNCATED_LENGTH);
+        tampered[Hmac.MIN_TRUNCATED_LENGTH - 1] ^= 1;
+        assertFalse(hmac.verify(ByteBuffer.wrap(data), ByteBuffer.wrap(tampered)));
+        assertFalse(hmac.verify(data, 0, data.length, tampered, 0, tampered.length));
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournaledChainStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheJournalOnOpen() throws IOException {
+        try (JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore())) {
+            store.compareAndSet("a", null, state(1));
+            store.compareAndSet("b", null, state(2));
+            store.compareAndSet("a", state(1), state(3));
+            store.compareAndSet("b", state(2), null);
+            store.compareAndSet("c", null, state(4));
+            store.remove("c");
+            store.compareAndSet("\u00e9", null, state(5));
+            // Failed updates are not journaled.
+            store.compareAndSet("a", state(1), state(6));
+        }
+
+        assertEquals(Map.of("a", state(3), "\u00e9", state(5)), reopen());
+    }
+
+    @Test
+    void stopsTheReplayAtATornRecord() throws IOException {
+        write(10);
+        List<Integer> records = records(journal(0));
+
+        // The length of the last record was never written.
+        patch(journal(0), records.get(9), new byte[Integer.BYTES]);
+
+        assertEquals(expected(9), reopen());
+    }
+
+    @Test
+    void stopsTheReplayAtACorruptedRecord() throws IOException {
+        write(10);
+        List<Integer> records = records(journal(0));
+
+        // A byte of the state of the 7th record was not written.
+        int recordEnd = records.get(7);
+        patch(journal(0), recordEnd - 1, new byte[]{(byte) 0xFF});
+
+        assertEquals(expected(6), reopen());
+    }
+
+    @Test
+    void recoversFromTheSnapshotAndTheJournalsAfterIt() throws IOException {
+        try (JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore())) {
+            for (int i = 0; i < 100; i++) {
+                store.compareAndSet("hid" + i, null, state(i));
+            }
+            store.snapshot();
+            assertTrue(Files.exists(directory.resolve("chains.snapshot")));
+            assertEquals(List.of(1L), journals(), "The journals older than the snapshot are deleted.");
+
+            for (int i = 0; i < 50; i++) {
+                store.compareAndSet("hid" + i, state(i), i % 2 == 0 ? null : state(i + 1000));
+            }
+            store.compareAndSet("new", null, state(-1));
+        }
+
+        Map<String, ChainState> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            if (i >= 50) {
+                expected.put("hid" + i, state(i));
+            } else if (i % 2 == 1) {
+                expected.put("hid" + i, state(i + 1000));
+            }
+        }
+        expected.put("new", state(-1));
+        assertEquals(expected, reopen());
+        // Reopening again reads the compacted snapshot.
+        assertEquals(expected, reopen());
+    }
+
+    @Test
+    void rotatesFullJournals() throws IOException {
+        Map<String, ChainState> expected = new HashMap<>();
+        try (JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore(), 4096)) {
+            for (int i = 0; i < 2000; i++) {
+                String hid = "hid" + (i % 300);
+                ChainState current = store.get(hid);
+                store.compareAndSet(hid, current, state(i));
+                expected.put(hid, state(i));
+            }
+        }
+
+        assertEquals(expected, reopen());
+    }
+
+    @Test
+    void rejectsAHidThatDoesNotFitInAJournal() throws IOException {
+        MemoryChainStore delegate = new MemoryChainStore();
+        try (JournaledChainStore store = JournaledChainStore.open(directory, delegate, 4096)) {
+            String hid = "h".repeat(4096);
+            assertThrows(IllegalArgumentException.class, () -> store.compareAndSet(hid, null, state(1)));
+            assertNull(delegate.get(hid), "A chain that can not be journaled is not updated.");
+            assertEquals(List.of(0L), journals());
+
+            store.compareAndSet("a", null, state(2));
+        }
+
+        assertEquals(Map.of("a", state(2)), reopen());
+    }
+
+    @Test
+    void refusesACorruptedSnapshot() throws IOException {
+        try (JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore())) {
+            store.compareAndSet("a", null, state(1));
+            store.snapshot();
+        }
+        patch(directory.resolve("chains.snapshot"), 20, new byte[]{0x7F});
+
+        assertThrows(IOException.class, () -> JournaledChainStore.open(directory, new MemoryChainStore()));
+    }
+
+    @Test
+    void rejectsUpdatesOnceClosed() throws IOException {
+        JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore());
+        store.close();
+
+        assertThrows(IllegalStateException.class, () -> store.compareAndSet("a", null, state(1)));
+        assertNull(store.get("a"));
+    }
+
+    private void write(int count) throws IOException {
+        try (JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore())) {
+            for (int i = 0; i < count; i++) {
+                store.compareAndSet("hid" + i, null, state(i));
+            }
+        }
+    }
+
+    private static Map<String, ChainState> expected(int count) {
+        Map<String, ChainState> expected = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            expected.put("hid" + i, state(i));
+        }
+        return expected;
+    }
+
+    private Map<String, ChainState> reopen() throws IOException {
+        Map<String, ChainState> states = new HashMap<>();
+        try (JournaledChainStore store = JournaledChainStore.open(directory, new MemoryChainStore())) {
+            store.forEach(states::put);
+        }
+        return states;
+    }
+
+    private Path journal(long generation) {
+        return directory.resolve("chains-" + generation + ".journal");
+    }
+
+    private List<Long> journals() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".journal"))
+                    .map(name -> Long.parseLong(name.substring("chains-".length(), name.length() - ".journal".length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Gets the offset of each record of a journal, a record being its length, its checksum and its payload.
+     */
+    private static List<Integer> records(Path journal) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal));
+        List<Integer> offsets = new ArrayList<>();
+        int position = 0;
+        while (buffer.getInt(position) != 0) {
+            offsets.add(position);
+            position += Integer.BYTES * 2 + buffer.getInt(position);
+        }
+        offsets.add(position);
+        return offsets;
+    }
+
+    private static void patch(Path file, int offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+
+    private static ChainState state(int i) {
+        return new ChainState(i, 1_700_000_000L + i, i);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryChainStoreTest {
+
+    @Test
+    void replacesOnlyTheExpectedState() {
+        MemoryChainStore store = new MemoryChainStore();
+        ChainState first = new ChainState(1, 10, 0);
+        ChainState second = new ChainState(1, 20, 0);
+
+        assertTrue(store.compareAndSet("hid", null, first));
+        assertFalse(store.compareAndSet("hid", null, second));
+        assertFalse(store.compareAndSet("hid", second, first));
+        assertTrue(store.compareAndSet("hid", first, second));
+        assertEquals(second, store.get("hid"));
+        assertFalse(store.compareAndSet("hid", first, null));
+        assertTrue(store.compareAndSet("hid", second, null));
+        assertNull(store.get("hid"));
+    }
+
+    @Test
+    void staysWithinTheMaximumSize() {
+        MemoryChainStore store = new MemoryChainStore(100, null);
+        for (int i = 0; i < 1000; i++) {
+            String hid = "hid" + i;
+            assertTrue(store.compareAndSet(hid, null, new ChainState(i, i, 0)));
+            assertNotNull(store.get(hid), "The new chain is never evicted.");
+            assertTrue(store.size() <= 100);
+        }
+        assertEquals(100, store.size());
+        assertEquals(900, store.evictionCount());
+    }
+
+    @Test
+    void evictsOlderChainsFirst() {
+        MemoryChainStore store = new MemoryChainStore(1000, null);
+        for (int i = 0; i < 1000; i++) {
+            store.compareAndSet("hid" + i, null, new ChainState(i, i, 0));
+        }
+        for (int i = 1000; i < 1500; i++) {
+            store.compareAndSet("hid" + i, null, new ChainState(i, i, 0));
+        }
+
+        int[] recent = new int[1];
+        store.forEach((hid, state) -> {
+            if (state.creationSeconds() >= 1000) {
+                recent[0]++;
+            }
+        });
+        // Each eviction removes the oldest of its sample, so the recent chains are mostly kept.
+        assertTrue(recent[0] > 450, "Kept " + recent[0] + " of the 500 recent chains.");
+    }
+
+    @Test
+    void evictsInConstantTimeWhenFull() {
+        MemoryChainStore store = new MemoryChainStore(50_000, Duration.ofHours(1));
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < 50_000; i++) {
+            store.compareAndSet("hid" + i, null, new ChainState(i, now, i));
+        }
+
+        // A full scan per insert takes tens of seconds here.
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 50_000; i < 100_000; i++) {
+                store.compareAndSet("hid" + i, null, new ChainState(i, now, i));
+            }
+        });
+        assertEquals(50_000, store.size());
+    }
+
+    @Test
+    void sweepsExpiredChains() {
+        MemoryChainStore store = new MemoryChainStore(100, Duration.ofSeconds(60));
+        long now = System.currentTimeMillis() / 1000;
+        store.compareAndSet("expired", null, new ChainState(1, now - 120, 0));
+        store.compareAndSet("alive", null, new ChainState(2, now, 0));
+
+        store.sweep();
+        assertNull(store.get("expired"));
+        assertNotNull(store.get("alive"));
+        assertEquals(1, store.evictionCount());
+    }
+
+}
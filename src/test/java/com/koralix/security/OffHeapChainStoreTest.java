@@ -0,0 +1,198 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapChainStoreTest {
+
+    @Test
+    void replacesOnlyTheExpectedState() {
+        OffHeapChainStore store = new OffHeapChainStore(100, null);
+        String hid = hid(1, 2, 3);
+        ChainState first = new ChainState(1, 10, 0);
+        ChainState second = new ChainState(1, 20, 999_999_999);
+
+        assertTrue(store.compareAndSet(hid, null, first));
+        assertFalse(store.compareAndSet(hid, null, second));
+        assertFalse(store.compareAndSet(hid, second, first));
+        assertTrue(store.compareAndSet(hid, first, second));
+        assertEquals(second, store.get(hid));
+        assertEquals(1, store.size());
+        assertTrue(store.compareAndSet(hid, second, null));
+        assertNull(store.get(hid));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void keepsCollidingChainsReachableAfterDeletes() {
+        // The chains go to the first segment, which holds 8 entries in 10 slots. They collide on its first slot,
+        // then on its last one so that the probe sequence wraps around.
+        for (long home : new long[]{0, 0xFFFFFFFFL}) {
+            OffHeapChainStore store = new OffHeapChainStore(OffHeapChainStore.SEGMENTS * 8, null);
+            List<String> hids = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                hids.add(hid(0, home, i));
+            }
+            // A chain one slot after the shared home, shifted by the collisions.
+            hids.add(hid(0, home == 0 ? 0x20000000L : 0, 100));
+            hids.add(hid(0, home, 3));
+            for (int i = 0; i < hids.size(); i++) {
+                assertTrue(store.compareAndSet(hids.get(i), null, new ChainState(i, i, i)));
+            }
+
+            for (int removed : new int[]{0, 2, 3}) {
+                store.remove(hids.get(removed));
+                hids.set(removed, null);
+                for (int i = 0; i < hids.size(); i++) {
+                    if (hids.get(i) != null) {
+                        assertEquals(new ChainState(i, i, i), store.get(hids.get(i)), "Chain " + i + " after removing " + removed);
+                    }
+                }
+            }
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    void deletesUnderRandomCollisions() {
+        // The first segment holds 64 entries in 80 slots, the chains only have 4 homes 5 slots apart.
+        OffHeapChainStore store = new OffHeapChainStore(OffHeapChainStore.SEGMENTS * 64, null);
+        Map<String, ChainState> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int round = 0; round < 20_000; round++) {
+            String hid = hid(0, (long) random.nextInt(4) << 28, random.nextInt(1000));
+            ChainState current = expected.get(hid);
+            if (current != null && random.nextBoolean()) {
+                assertTrue(store.compareAndSet(hid, current, null));
+                expected.remove(hid);
+            } else if (current == null && expected.size() < 60) {
+                ChainState state = new ChainState(round, round, 0);
+                assertTrue(store.compareAndSet(hid, null, state));
+                expected.put(hid, state);
+            }
+        }
+
+        assertEquals(expected.size(), store.size());
+        expected.forEach((hid, state) -> assertEquals(state, store.get(hid)));
+        Map<String, ChainState> stored = new HashMap<>();
+        store.forEach(stored::put);
+        assertEquals(expected, stored);
+    }
+
+    @Test
+    void staysWithinTheMaximumSize() {
+        for (int maxSize : new int[]{1, 10, 63, 1000}) {
+            OffHeapChainStore store = new OffHeapChainStore(maxSize, null);
+            for (int i = 0; i < maxSize * 10 + 100; i++) {
+                String hid = randomHid();
+                assertTrue(store.compareAndSet(hid, null, new ChainState(i, i, 0)));
+                assertNotNull(store.get(hid), "The new chain is never evicted.");
+                assertTrue(store.size() <= maxSize, store.size() + " chains in a store of " + maxSize);
+            }
+            int[] count = new int[1];
+            store.forEach((hid, state) -> count[0]++);
+            assertEquals(store.size(), count[0]);
+        }
+    }
+
+    @Test
+    void sweepsExpiredChains() {
+        OffHeapChainStore store = new OffHeapChainStore(100, Duration.ofSeconds(60));
+        long now = Instant.now().getEpochSecond();
+        String expired = randomHid();
+        String alive = randomHid();
+        store.compareAndSet(expired, null, new ChainState(1, now - 120, 0));
+        store.compareAndSet(alive, null, new ChainState(2, now, 0));
+
+        store.sweep();
+        assertNull(store.get(expired));
+        assertNotNull(store.get(alive));
+        assertEquals(1, store.evictionCount());
+    }
+
+    @Test
+    void treatsInvalidHidsAsWithoutChain() {
+        OffHeapChainStore store = new OffHeapChainStore(100, null);
+        ChainState state = new ChainState(1, 1, 0);
+
+        for (String hid : new String[]{"foo", "", "h\u00e9llo", randomHid() + "AAAA", randomHid().substring(4)}) {
+            assertNull(store.get(hid));
+            assertFalse(store.compareAndSet(hid, state, null));
+            assertFalse(store.compareAndSet(hid, state, state));
+            assertTrue(store.compareAndSet(hid, null, null));
+            store.remove(hid);
+            assertThrows(IllegalArgumentException.class, () -> store.compareAndSet(hid, null, state));
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void treatsOtherSpellingsOfAHidAsOtherHids() {
+        OffHeapChainStore store = new OffHeapChainStore(100, null);
+        ChainState state = new ChainState(1, 1, 0);
+        String hid = randomHid();
+        assertTrue(store.compareAndSet(hid, null, state));
+
+        // Unpadded, and with the 2 unused bits of the last char set.
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        String nonCanonical = hid.substring(0, 42) + alphabet.charAt(alphabet.indexOf(hid.charAt(42)) ^ 1) + "=";
+        for (String other : new String[]{hid.substring(0, 43), nonCanonical}) {
+            assertNull(store.get(other));
+            assertThrows(IllegalArgumentException.class, () -> store.compareAndSet(other, null, state));
+            store.remove(other);
+        }
+        assertEquals(state, store.get(hid));
+    }
+
+    @Test
+    void rejectsSizesLargerThanItsBuffers() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new OffHeapChainStore(Integer.MAX_VALUE, null));
+        assertTrue(e.getMessage().startsWith("maxSize must be at most"), e.getMessage());
+    }
+
+    @Test
+    void rejectsUnsignedTokensWithInvalidHids() {
+        SimpleSecurityProvider provider = SimpleSecurityProvider.builder("off heap test key", 0L)
+                .chainStore(new OffHeapChainStore(100, null))
+                .events(SecurityEvents.builder(event -> { }).build())
+                .build();
+        String forged = TokenFormatTest.b64("foo:1:1.000000000:0") + "." + Base64.getUrlEncoder().encodeToString(new byte[Hmac.LENGTH]);
+
+        assertFalse(provider.verifyToken(forged));
+        assertEquals(Optional.empty(), provider.getHidIfValid(forged));
+        assertEquals(List.of(false), provider.verifyTokens(List.of(forged)));
+        assertEquals(3, provider.getMetrics().snapshot().counter("tokens.rejected.wrong_chain"));
+    }
+
+    /**
+     * Builds a hid whose raw bytes start with the given longs, which select the segment and the home slot.
+     */
+    private static String hid(long k0, long k1, long k2) {
+        ByteBuffer raw = ByteBuffer.allocate(TokenParser.HID_LENGTH).putLong(k0 << 32).putLong(k1).putLong(k2).putLong(k2 * 31);
+        return Base64.getUrlEncoder().encodeToString(raw.array());
+    }
+
+    private static String randomHid() {
+        UUID uuid = UUID.randomUUID();
+        return hid(uuid.getMostSignificantBits() >>> 32, uuid.getLeastSignificantBits(), uuid.getMostSignificantBits());
+    }
+
+}
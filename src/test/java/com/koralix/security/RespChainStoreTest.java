@@ -0,0 +1,178 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RespChainStoreTest {
+
+    private RespStandInServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new RespStandInServer();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void comparesAndSetsThroughTheCachedScript() {
+        try (RespChainStore store = store().build()) {
+            ChainState first = new ChainState(1, 10, 0);
+            ChainState second = new ChainState(1, 20, 999_999_999);
+
+            assertTrue(store.compareAndSet("hid", null, first));
+            assertEquals(1, server.commands("EVALSHA"));
+            assertEquals(1, server.commands("EVAL"), "The first EVALSHA falls back to EVAL.");
+
+            assertFalse(store.compareAndSet("hid", null, second));
+            assertFalse(store.compareAndSet("hid", second, first));
+            assertTrue(store.compareAndSet("hid", first, second));
+            assertEquals(second, store.get("hid"));
+            assertEquals(4, server.commands("EVALSHA"));
+            assertEquals(1, server.commands("EVAL"), "The script stays cached.");
+
+            server.flushScripts();
+            assertTrue(store.compareAndSet("hid", second, null));
+            assertEquals(2, server.commands("EVAL"));
+            assertNull(store.get("hid"));
+        }
+    }
+
+    @Test
+    void readsBatchesWithOneMget() {
+        try (RespChainStore store = store().build()) {
+            List<String> hids = new ArrayList<>();
+            List<ChainState> expected = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                hids.add("hid" + i);
+                ChainState state = i % 3 == 0 ? null : new ChainState(i, i, i);
+                if (state != null) {
+                    store.compareAndSet("hid" + i, null, state);
+                }
+                expected.add(state);
+            }
+
+            assertEquals(expected, store.getAllAsync(hids).join());
+            assertEquals(1, server.commands("MGET"));
+            assertEquals(List.of(), store.getAllAsync(List.of()).join());
+            assertEquals(1, server.commands("MGET"));
+        }
+    }
+
+    @Test
+    void generatesAndVerifiesBatchesWithOneMgetEach() {
+        try (RespChainStore store = store().build()) {
+            SimpleSecurityProvider provider = SimpleSecurityProvider.builder("resp test key", 0L)
+                    .chainStore(store)
+                    .events(SecurityEvents.builder(event -> { }).build())
+                    .build();
+            List<String> hids = List.of("a", "b", "c", "a");
+
+            List<String> tokens = provider.generateTokens(hids);
+            assertEquals(1, server.commands("MGET"));
+            assertEquals(tokens.get(0), tokens.get(3));
+            assertEquals(List.of(true, true, true, true), provider.verifyTokens(tokens));
+            assertEquals(2, server.commands("MGET"));
+
+            provider.generateToken("b");
+            assertEquals(List.of(true, false, true), provider.verifyTokens(tokens.subList(0, 3)));
+        }
+    }
+
+    @Test
+    void reconnectsAfterTheServerDropsTheConnection() throws IOException {
+        try (RespChainStore store = store().build()) {
+            ChainState state = new ChainState(1, 1, 0);
+            assertTrue(store.compareAndSet("hid", null, state));
+
+            server.dropConnections();
+            // The first commands may still be sent on the dropped connection before the reader notices it.
+            ChainState read = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                while (true) {
+                    try {
+                        return store.get("hid");
+                    } catch (RuntimeException e) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            assertEquals(state, read);
+            assertEquals(2, server.connections());
+        }
+    }
+
+    @Test
+    void failsEveryPendingCommandWhenTheConnectionIsLost() throws IOException {
+        try (RespChainStore store = store().build()) {
+            store.get("hid");
+            server.stalled(true);
+            List<CompletableFuture<ChainState>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(store.getAsync("hid" + i));
+            }
+
+            server.dropConnections();
+            for (CompletableFuture<ChainState> future : futures) {
+                CompletionException e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(CompletionException.class, future::join));
+                assertInstanceOf(IOException.class, e.getCause());
+            }
+
+            server.stalled(false);
+            assertNull(store.get("hid"));
+        }
+    }
+
+    @Test
+    void timesOutWhenTheServerDoesNotAnswer() {
+        try (RespChainStore store = store().commandTimeout(Duration.ofMillis(100)).build()) {
+            store.get("hid");
+            server.stalled(true);
+
+            RuntimeException e = assertThrows(RuntimeException.class, () -> store.get("hid"));
+            assertEquals("The chain store did not answer in time.", e.getMessage());
+        }
+    }
+
+    @Test
+    void authenticatesWithThePassword() {
+        server.password("secret");
+
+        try (RespChainStore store = store().password("wrong").build()) {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> store.get("hid"));
+            assertInstanceOf(IOException.class, e.getCause());
+            assertTrue(e.getCause().getMessage().startsWith("Could not authenticate to the chain store: WRONGPASS"), e.getCause().getMessage());
+        }
+        try (RespChainStore store = store().build()) {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> store.get("hid"));
+            assertTrue(e.getMessage().startsWith("NOAUTH"), e.getMessage());
+        }
+        try (RespChainStore store = store().password("secret").build()) {
+            assertTrue(store.compareAndSet("hid", null, new ChainState(1, 1, 0)));
+            assertEquals(new ChainState(1, 1, 0), store.get("hid"));
+        }
+    }
+
+    private RespChainStore.Builder store() {
+        return RespChainStore.builder("localhost", server.port());
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.koralix.security;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded stand-in for a Redis server, implementing only the commands used by {@link RespChainStore}:
+ * PING, AUTH, GET, MGET, SET (with PX), DEL, SCAN and the compare and set script through EVAL and EVALSHA.
+ * Keys are scanned in a single page.
+ * <p>
+ * Failures can be injected: a password, dropped connections, a flushed script cache and a server that stops answering.
+ */
+public class RespStandInServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executorService = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "resp-stand-in");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> scripts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> commands = new ConcurrentHashMap<>();
+    private final AtomicLong connections = new AtomicLong();
+    private volatile String password;
+    private volatile boolean stalled;
+
+    public RespStandInServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executorService.execute(this::accept);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Requires AUTH with the given password before any other command.
+     */
+    public RespStandInServer password(String password) {
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * Keeps reading commands without answering them, until set back to false.
+     */
+    public RespStandInServer stalled(boolean stalled) {
+        this.stalled = stalled;
+        return this;
+    }
+
+    /**
+     * Forgets the cached scripts, like SCRIPT FLUSH or a restart.
+     */
+    public void flushScripts() {
+        scripts.clear();
+    }
+
+    /**
+     * Closes the open client connections, the server keeps accepting new ones.
+     */
+    public void dropConnections() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Gets the number of received commands with the given name.
+     */
+    public long commands(String name) {
+        AtomicLong count = commands.get(name);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Gets the number of accepted connections.
+     */
+    public long connections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executorService.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.incrementAndGet();
+                executorService.execute(() -> serve(socket));
+            } catch (IOException ignored) {
+                // Closed.
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            boolean authenticated = password == null;
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                String name = string(command.get(0)).toUpperCase();
+                commands.computeIfAbsent(name, k -> new AtomicLong()).incrementAndGet();
+                if (stalled) {
+                    continue;
+                }
+                Object reply;
+                if (name.equals("AUTH")) {
+                    authenticated = password == null || password.equals(string(command.get(command.size() - 1)));
+                    reply = authenticated ? "OK" : new IOException("WRONGPASS invalid username-password pair or user is disabled.");
+                } else if (!authenticated) {
+                    reply = new IOException("NOAUTH Authentication required.");
+                } else {
+                    reply = execute(name, command);
+                }
+                reply(out, reply);
+                // Flush once the pipelined commands already received are answered.
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // Connection closed.
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private Object execute(String name, List<byte[]> command) {
+        switch (name) {
+            case "PING":
+                return "PONG";
+            case "GET":
+                return get(string(command.get(1)));
+            case "MGET": {
+                List<Object> values = new ArrayList<>();
+                for (int i = 1; i < command.size(); i++) {
+                    values.add(get(string(command.get(i))));
+                }
+                return values;
+            }
+            case "SET":
+                set(string(command.get(1)), command.get(2), command.size() > 4 ? Long.parseLong(string(command.get(4))) : 0);
+                return "OK";
+            case "DEL":
+                return entries.remove(string(command.get(1))) == null ? 0L : 1L;
+            case "SCAN": {
+                String prefix = string(command.get(3));
+                prefix = prefix.substring(0, prefix.length() - 1).replace("\\", "");
+                List<Object> keys = new ArrayList<>();
+                long now = System.currentTimeMillis();
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (entry.getKey().startsWith(prefix) && !entry.getValue().expired(now)) {
+                        keys.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                return List.of("0".getBytes(StandardCharsets.US_ASCII), keys);
+            }
+            case "EVAL":
+                if (!string(command.get(1)).equals(RespChainStore.COMPARE_AND_SET_SCRIPT)) {
+                    return new IOException("ERR unknown script");
+                }
+                scripts.put(RespChainStore.COMPARE_AND_SET_SHA, true);
+                return compareAndSet(command);
+            case "EVALSHA":
+                if (!scripts.containsKey(string(command.get(1)))) {
+                    return new IOException("NOSCRIPT No matching script. Please use EVAL.");
+                }
+                return compareAndSet(command);
+            default:
+                return new IOException("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private Object get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.expired(System.currentTimeMillis()) ? null : entry.value;
+    }
+
+    private void set(String key, byte[] value, long ttl) {
+        entries.put(key, new Entry(value, ttl == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + ttl));
+    }
+
+    private synchronized long compareAndSet(List<byte[]> command) {
+        String key = string(command.get(3));
+        byte[] current = (byte[]) get(key);
+        if (!Arrays.equals(current == null ? new byte[0] : current, command.get(4))) {
+            return 0;
+        }
+        if (command.get(5).length == 0) {
+            entries.remove(key);
+        } else {
+            set(key, command.get(5), Long.parseLong(string(command.get(6))));
+        }
+        return 1;
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Expected an array.");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string.");
+            }
+            int length = Integer.parseInt(readLine(in));
+            command.add(in.readNBytes(length));
+            readLine(in);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void reply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof String value) {
+            out.write(("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof IOException error) {
+            out.write(("-" + error.getMessage() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Long value) {
+            out.write((":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof byte[] value) {
+            out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(value);
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        } else {
+            List<?> values = (List<?>) reply;
+            out.write(("*" + values.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (Object value : values) {
+                reply(out, value);
+            }
+        }
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Entry(byte[] value, long expiresAt) {
+
+        boolean expired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecurityEventsTest {
+
+    @Test
+    void deliversEachBurstOfEvents() throws InterruptedException {
+        BlockingQueue<SecurityEvent> delivered = new LinkedBlockingQueue<>();
+        try (SecurityEvents events = SecurityEvents.builder(delivered::add).build()) {
+            for (int i = 0; i < 100; i++) {
+                events.publish(SecurityEvent.Type.EXPIRED, "b", i);
+                SecurityEvent event = delivered.poll(5, TimeUnit.SECONDS);
+                assertNotNull(event, "Event " + i + " was not delivered.");
+                assertEquals(i, event.chainId());
+            }
+        }
+    }
+
+    @Test
+    void holdsNoThreadUntilAnEventIsPublished() {
+        int threads = Thread.activeCount();
+        List<SimpleSecurityProvider> providers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Never closed, like the providers created with the constructors.
+            providers.add(SimpleSecurityProvider.builder("events test key", 0L).build());
+        }
+        assertTrue(Thread.activeCount() - threads < 10, (Thread.activeCount() - threads) + " threads for 100 providers");
+        assertEquals(100, providers.size());
+    }
+
+    @Test
+    void deliversTheBufferedEventsOnClose() throws InterruptedException {
+        List<SecurityEvent> delivered = new CopyOnWriteArrayList<>();
+        List<Thread> drainers = new CopyOnWriteArrayList<>();
+        SecurityEvents events = SecurityEvents.builder(event -> {
+            drainers.add(Thread.currentThread());
+            delivered.add(event);
+        }).rateLimit(SecurityEvent.Type.REPLAY, Integer.MAX_VALUE).build();
+        for (int i = 0; i < 1000; i++) {
+            events.publish(SecurityEvent.Type.REPLAY, "a", i);
+        }
+
+        events.close();
+        assertEquals(1000, delivered.size());
+        drainers.get(0).join(5000);
+        assertFalse(drainers.get(0).isAlive(), "The background thread stops once closed.");
+
+        events.publish(SecurityEvent.Type.REPLAY, "a", 0);
+        assertEquals(1, events.dropped());
+    }
+
+    @Test
+    void closesTheDefaultEventsWithTheProvider() {
+        SimpleSecurityProvider provider = SimpleSecurityProvider.builder("events test key", 0L).build();
+        provider.close();
+        provider.getEvents().publish(SecurityEvent.Type.REPLAY, "a", 0);
+        assertEquals(1, provider.getEvents().dropped());
+
+        try (SecurityEvents events = SecurityEvents.builder(event -> { }).build()) {
+            SimpleSecurityProvider shared = SimpleSecurityProvider.builder("events test key", 0L).events(events).build();
+            shared.close();
+            events.publish(SecurityEvent.Type.REPLAY, "a", 0);
+            assertEquals(0, events.dropped(), "Given events are left open.");
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.koralix.security;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Drives simulated logins (join, hasJoined and generateToken) against a {@link SessionStandInServer} and reports
+ * the latency percentiles.
+ * <p>
+ * Each login runs with shared clients, one {@link MinecraftAPI} for the joins and one for the hasJoined checks, and
+ * with a new instance for every request, the baseline of a new HTTP client per call.
+ * <p>
+ * Arguments, all optional: logins, concurrency, min latency ms, max latency ms, error rate, 429 rate, transport,
+ * hasJoined calls per login (like a proxy and its backend both checking the join), hasJoined cache ttl ms, max
+ * attempts of each request and clients ({@code both}, {@code shared} or {@code perCall}).
+ * <pre>./gradlew loadTest --args="100000 512 20 80 0.01 0.01 ASYNC 2 5000 3 both"</pre>
+ */
+public class SessionLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        long minLatency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        long maxLatency = args.length > 3 ? Long.parseLong(args[3]) : 80;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        double tooManyRequestsRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        MinecraftAPI.Transport transport = args.length > 6 ? MinecraftAPI.Transport.valueOf(args[6]) : MinecraftAPI.Transport.ASYNC;
+        int hasJoinedCalls = args.length > 7 ? Integer.parseInt(args[7]) : 1;
+        long hasJoinedCacheTtl = args.length > 8 ? Long.parseLong(args[8]) : 0;
+        int maxAttempts = args.length > 9 ? Integer.parseInt(args[9]) : 1;
+        String clients = args.length > 10 ? args[10] : "both";
+        if (!clients.equals("both") && !clients.equals("shared") && !clients.equals("perCall")) {
+            throw new IllegalArgumentException("clients must be both, shared or perCall.");
+        }
+        RetryPolicy retryPolicy = maxAttempts > 1
+                ? new RetryPolicy(maxAttempts, RetryPolicy.DEFAULT.initialBackoff(), RetryPolicy.DEFAULT.maxBackoff(),
+                        RetryPolicy.DEFAULT.multiplier(), RetryPolicy.DEFAULT.jitter())
+                : RetryPolicy.NONE;
+
+        try (SimpleSecurityProvider securityProvider = SimpleSecurityProvider.builder("load test key", 0L).build();
+             SessionStandInServer stub = new SessionStandInServer()
+                .latency(Duration.ofMillis(minLatency), Duration.ofMillis(maxLatency))
+                .errorRate(errorRate)
+                .tooManyRequestsRate(tooManyRequestsRate)) {
+            System.out.printf("%d logins, %d concurrent, %d-%d ms latency, %.1f%% errors, %.1f%% 429, %s transport, %d hasJoined per login, %d ms cache, %d attempts%n",
+                    logins, concurrency, minLatency, maxLatency, errorRate * 100, tooManyRequestsRate * 100, transport, hasJoinedCalls, hasJoinedCacheTtl, maxAttempts);
+            Supplier<MinecraftAPI> client = () -> api(stub, transport, concurrency, retryPolicy).client();
+            Supplier<MinecraftAPI> server = () -> serverApi(stub, transport, concurrency, retryPolicy, hasJoinedCacheTtl).server(securityProvider);
+
+            double shared = 0;
+            double perCall = 0;
+            if (!clients.equals("perCall")) {
+                try (Sessions sessions = Sessions.shared(client.get(), server.get())) {
+                    shared = measure("shared clients", sessions, securityProvider, logins, concurrency, hasJoinedCalls);
+                }
+            }
+            if (!clients.equals("shared")) {
+                try (Sessions sessions = Sessions.perCall(client, server)) {
+                    perCall = measure("client per call", sessions, securityProvider, logins, concurrency, hasJoinedCalls);
+                }
+            }
+            if (shared > 0 && perCall > 0) {
+                System.out.printf("%nshared clients: %.2fx the logins/s of a client per call%n", shared / perCall);
+            }
+            System.out.printf("stub: %d requests, %d errors, %d too many requests%n", stub.requests(), stub.errors(), stub.tooManyRequests());
+        }
+    }
+
+    private static MinecraftAPI.Builder api(SessionStandInServer stub, MinecraftAPI.Transport transport, int concurrency, RetryPolicy retryPolicy) {
+        return MinecraftAPI.builder()
+                .sessionServer(stub.url())
+                .transport(transport)
+                .retryPolicy(retryPolicy)
+                .maxRequests(concurrency)
+                .maxIdleConnections(concurrency);
+    }
+
+    private static MinecraftAPI.Builder serverApi(SessionStandInServer stub, MinecraftAPI.Transport transport, int concurrency, RetryPolicy retryPolicy, long hasJoinedCacheTtl) {
+        MinecraftAPI.Builder builder = api(stub, transport, concurrency, retryPolicy);
+        return hasJoinedCacheTtl > 0 ? builder.hasJoinedCacheTtl(Duration.ofMillis(hasJoinedCacheTtl)) : builder;
+    }
+
+    /**
+     * Warms up, runs the logins and prints the results.
+     * @return Logins per second.
+     */
+    private static double measure(String name, Sessions sessions, SimpleSecurityProvider securityProvider, int logins, int concurrency, int hasJoinedCalls) throws InterruptedException {
+        // Warm up the connections and the JIT before measuring.
+        run(sessions, securityProvider, Math.min(logins, concurrency * 4), concurrency, hasJoinedCalls);
+        Result result = run(sessions, securityProvider, logins, concurrency, hasJoinedCalls);
+
+        double loginsPerSecond = logins / (result.nanos() / 1e9);
+        System.out.printf("%n%s: %.0f logins/s, %d failed%n", name, loginsPerSecond, result.failures());
+        print("login", result.login().snapshot());
+        print("join", result.join().snapshot());
+        print("hasJoined", result.hasJoined().snapshot());
+        System.out.printf("retries: %d join, %d hasJoined%n", sessions.joinRetries(), sessions.hasJoinedRetries());
+        return loginsPerSecond;
+    }
+
+    private static Result run(Sessions sessions, SimpleSecurityProvider securityProvider, int logins, int concurrency, int hasJoinedCalls) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram joinLatency = new LatencyHistogram();
+        LatencyHistogram hasJoinedLatency = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<?>> pending = new ArrayList<>(logins);
+        long start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            permits.acquire();
+            String username = "player" + i;
+            String uuid = UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+            long loginStart = System.nanoTime();
+            pending.add(timed(joinLatency, () -> sessions.join(uuid, username))
+                    .thenCompose(serverId -> hasJoined(sessions, hasJoinedLatency, username, serverId, hasJoinedCalls))
+                    .thenApply(securityProvider::generateToken)
+                    .whenComplete((token, throwable) -> {
+                        if (throwable == null) {
+                            latency.recordSince(loginStart);
+                        } else {
+                            failures.increment();
+                        }
+                        permits.release();
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).exceptionally(throwable -> null).join();
+        return new Result(latency, joinLatency, hasJoinedLatency, failures.sum(), System.nanoTime() - start);
+    }
+
+    private static CompletableFuture<String> hasJoined(Sessions sessions, LatencyHistogram latency, String username, String serverId, int calls) {
+        CompletableFuture<String> first = timed(latency, () -> sessions.hasJoined(username, serverId));
+        CompletableFuture<?>[] others = new CompletableFuture<?>[calls - 1];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = timed(latency, () -> sessions.hasJoined(username, serverId));
+        }
+        return CompletableFuture.allOf(others).thenCombine(first, (ignored, hid) -> hid);
+    }
+
+    /**
+     * Records the latency of the successful requests.
+     */
+    private static <T> CompletableFuture<T> timed(LatencyHistogram latency, Supplier<CompletableFuture<T>> request) {
+        long start = System.nanoTime();
+        return request.get().whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                latency.recordSince(start);
+            }
+        });
+    }
+
+    private static void print(String name, LatencySnapshot latency) {
+        System.out.printf("%-10s p50 %6.1f ms, p99 %6.1f ms, p99.9 %6.1f ms, max %6.1f ms (%d)%n", name,
+                latency.p50Nanos() / 1e6, latency.p99Nanos() / 1e6, latency.p999Nanos() / 1e6,
+                latency.maxNanos() / 1e6, latency.count());
+    }
+
+    private record Result(LatencyHistogram login, LatencyHistogram join, LatencyHistogram hasJoined, long failures, long nanos) {
+    }
+
+    /**
+     * Session server requests of a run, through shared instances or through a new instance for each request.
+     */
+    private abstract static class Sessions implements AutoCloseable {
+
+        abstract CompletableFuture<String> join(String uuid, String username);
+
+        abstract CompletableFuture<String> hasJoined(String username, String serverId);
+
+        abstract long joinRetries();
+
+        abstract long hasJoinedRetries();
+
+        @Override
+        public abstract void close();
+
+        static Sessions shared(MinecraftAPI client, MinecraftAPI server) {
+            return new Sessions() {
+                @Override
+                CompletableFuture<String> join(String uuid, String username) {
+                    return client.join("access token", uuid, username);
+                }
+
+                @Override
+                CompletableFuture<String> hasJoined(String username, String serverId) {
+                    return server.hasJoined(username, serverId);
+                }
+
+                @Override
+                long joinRetries() {
+                    return client.getMetrics().snapshot().counter("join.retries");
+                }
+
+                @Override
+                long hasJoinedRetries() {
+                    return server.getMetrics().snapshot().counter("hasJoined.retries");
+                }
+
+                @Override
+                public void close() {
+                    client.close();
+                    server.close();
+                }
+            };
+        }
+
+        static Sessions perCall(Supplier<MinecraftAPI> client, Supplier<MinecraftAPI> server) {
+            LongAdder joinRetries = new LongAdder();
+            LongAdder hasJoinedRetries = new LongAdder();
+            return new Sessions() {
+                @Override
+                CompletableFuture<String> join(String uuid, String username) {
+                    return once(client, api -> api.join("access token", uuid, username), "join.retries", joinRetries);
+                }
+
+                @Override
+                CompletableFuture<String> hasJoined(String username, String serverId) {
+                    return once(server, api -> api.hasJoined(username, serverId), "hasJoined.retries", hasJoinedRetries);
+                }
+
+                @Override
+                long joinRetries() {
+                    return joinRetries.sum();
+                }
+
+                @Override
+                long hasJoinedRetries() {
+                    return hasJoinedRetries.sum();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        /**
+         * Sends a request with a new instance and closes it once answered.
+         */
+        private static <T> CompletableFuture<T> once(Supplier<MinecraftAPI> factory, Function<MinecraftAPI, CompletableFuture<T>> request, String retries, LongAdder counter) {
+            MinecraftAPI api = factory.get();
+            return request.apply(api).whenComplete((value, throwable) -> {
+                counter.add(api.getMetrics().snapshot().counter(retries));
+                api.close();
+            });
+        }
+    }
+
+}
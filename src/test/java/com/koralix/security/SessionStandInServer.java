@@ -0,0 +1,239 @@
+package com.koralix.security;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded stand-in for the Mojang session server, implementing join and hasJoined for
+ * {@link MinecraftAPI.Builder#sessionServer(String)}.
+ * Every access token is accepted and joins are remembered for 30 seconds, like the real server. Responses are delayed
+ * by a random latency without blocking a thread, and can fail with 500 or 429 (with {@code Retry-After: 1}) at the
+ * configured rates.
+ */
+public class SessionStandInServer implements AutoCloseable {
+
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*\"([^\"]*)\"");
+    private static final long JOIN_TTL = TimeUnit.SECONDS.toNanos(30);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final HttpServer server;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "session-stand-in-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Join> joins = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder tooManyRequests = new LongAdder();
+    private volatile long minLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile double errorRate;
+    private volatile double tooManyRequestsRate;
+
+    public SessionStandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "session-stand-in-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/session/minecraft/join", this::join);
+        server.createContext("/session/minecraft/hasJoined", this::hasJoined);
+        server.start();
+    }
+
+    /**
+     * Base URL to pass to {@link MinecraftAPI.Builder#sessionServer(String)}.
+     */
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Delays each response by a uniformly distributed latency between min and max.
+     */
+    public SessionStandInServer latency(Duration min, Duration max) {
+        if (max.compareTo(min) < 0) {
+            throw new IllegalArgumentException("max must not be less than min.");
+        }
+        this.minLatencyNanos = min.toNanos();
+        this.maxLatencyNanos = max.toNanos();
+        return this;
+    }
+
+    /**
+     * Fraction of the requests answered with 500.
+     */
+    public SessionStandInServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Fraction of the requests answered with 429.
+     */
+    public SessionStandInServer tooManyRequestsRate(double tooManyRequestsRate) {
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        return this;
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public long tooManyRequests() {
+        return tooManyRequests.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    private void join(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, null);
+            return;
+        }
+        Map<String, String> body = new HashMap<>();
+        try (InputStream in = exchange.getRequestBody()) {
+            Matcher matcher = JSON_FIELD.matcher(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                body.put(matcher.group(1), matcher.group(2));
+            }
+        }
+        String username = body.get("username");
+        String serverId = body.get("serverId");
+        if (username == null || serverId == null || body.get("accessToken") == null) {
+            respond(exchange, 400, null);
+            return;
+        }
+        if (fail(exchange)) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (joins.size() > 100_000) {
+            joins.values().removeIf(join -> now - join.time() > JOIN_TTL);
+        }
+        joins.put(username + '\n' + serverId, new Join(profileId(body.get("selectedProfile"), username), username, now));
+        respond(exchange, 204, null);
+    }
+
+    private void hasJoined(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, null);
+            return;
+        }
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (fail(exchange)) {
+            return;
+        }
+
+        Join join = joins.get(query.get("username") + '\n' + query.get("serverId"));
+        if (join == null || System.nanoTime() - join.time() > JOIN_TTL) {
+            respond(exchange, 204, null);
+            return;
+        }
+        respond(exchange, 200, "{\"id\":\"" + join.id().toString().replace("-", "") + "\",\"name\":\"" + join.name() +
+                "\",\"properties\":[{\"name\":\"textures\",\"value\":\"e30=\"}]}");
+    }
+
+    private boolean fail(HttpExchange exchange) {
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random < errorRate) {
+            errors.increment();
+            respond(exchange, 500, "{\"error\":\"InternalServerError\"}");
+            return true;
+        }
+        if (random < errorRate + tooManyRequestsRate) {
+            tooManyRequests.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 429, "{\"error\":\"TooManyRequestsException\"}");
+            return true;
+        }
+        return false;
+    }
+
+    private void respond(HttpExchange exchange, int code, String body) {
+        requests.increment();
+        long min = minLatencyNanos;
+        long max = maxLatencyNanos;
+        long delay = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+        if (delay > 0) {
+            scheduler.schedule(() -> send(exchange, code, body), delay, TimeUnit.NANOSECONDS);
+        } else {
+            send(exchange, code, body);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) {
+        try (exchange) {
+            if (body == null) {
+                exchange.sendResponseHeaders(code, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException ignored) {
+            // The client went away.
+        }
+    }
+
+    private static UUID profileId(String selectedProfile, String username) {
+        if (selectedProfile != null && selectedProfile.length() == 32) {
+            try {
+                return new UUID(Long.parseUnsignedLong(selectedProfile.substring(0, 16), 16),
+                        Long.parseUnsignedLong(selectedProfile.substring(16), 16));
+            } catch (NumberFormatException ignored) {
+                // Not a profile id, fall back to the offline one.
+            }
+        }
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Join(UUID id, String name, long time) {
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.koralix.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class SimpleSecurityProviderTest {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(200);
+
+    @Test
+    void generatesBatchesWithinTheStoreTimeout() {
+        FaultyChainStore store = new FaultyChainStore();
+        SimpleSecurityProvider provider = provider(store);
+        store.stalledReads = true;
+
+        RuntimeException e = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(RuntimeException.class, () -> provider.generateTokens(List.of("a", "b"))));
+        assertEquals("The chain store did not answer in time.", e.getMessage());
+        assertEquals(0, store.size(), "No chain is updated when the chains cannot be read.");
+    }
+
+    @Test
+    void verifiesBatchesWithinTheStoreTimeout() {
+        FaultyChainStore store = new FaultyChainStore();
+        SimpleSecurityProvider provider = provider(store);
+        List<String> tokens = List.of(provider.generateToken("a"), provider.generateToken("b"));
+        store.stalledReads = true;
+
+        RuntimeException e = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(RuntimeException.class, () -> provider.verifyTokens(tokens)));
+        assertEquals("The chain store did not answer in time.", e.getMessage());
+    }
+
+    @Test
+    void keepsTheTokensOfTheUpdatedChains() {
+        FaultyChainStore store = new FaultyChainStore();
+        SimpleSecurityProvider provider = provider(store);
+        store.failedUpdates = Set.of("b");
+        store.stalledUpdates = Set.of("d");
+
+        List<String> tokens = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> provider.generateTokens(List.of("a", "b", "c", "d", "a")));
+        assertNotNull(tokens.get(0));
+        assertNull(tokens.get(1));
+        assertNotNull(tokens.get(2));
+        assertNull(tokens.get(3));
+        assertEquals(tokens.get(0), tokens.get(4));
+        assertEquals(2, provider.getMetrics().snapshot().counter("tokens.generated"));
+
+        store.failedUpdates = Set.of();
+        store.stalledUpdates = Set.of();
+        assertEquals(List.of(true, true), provider.verifyTokens(List.of(tokens.get(0), tokens.get(2))));
+    }
+
+    @Test
+    void generatesAgainTheChainsChangedSinceRead() {
+        FaultyChainStore store = new FaultyChainStore();
+        SimpleSecurityProvider provider = provider(store);
+        String previous = provider.generateToken("a");
+        // The chain rotates between the batch read and its update.
+        store.beforeUpdate = (hid, self) -> {
+            self.beforeUpdate = null;
+            provider.generateToken(hid);
+        };
+
+        List<String> tokens = provider.generateTokens(List.of("a"));
+        assertEquals(List.of(true), provider.verifyTokens(tokens));
+        assertFalse(provider.verifyToken(previous));
+    }
+
+    private static SimpleSecurityProvider provider(@NotNull ChainStore store) {
+        return SimpleSecurityProvider.builder("provider test key", 0L)
+                .chainStore(store)
+                .storeTimeout(TIMEOUT)
+                .events(SecurityEvents.builder(event -> { }).build())
+                .build();
+    }
+
+    /**
+     * Memory store whose asynchronous methods can stall or fail.
+     */
+    private static final class FaultyChainStore implements ChainStore {
+
+        private final MemoryChainStore delegate = new MemoryChainStore();
+        private volatile boolean stalledReads;
+        private volatile Set<String> failedUpdates = Set.of();
+        private volatile Set<String> stalledUpdates = Set.of();
+        private volatile @Nullable BiConsumer<String, FaultyChainStore> beforeUpdate;
+
+        @Override
+        public @Nullable ChainState get(@NotNull String hid) {
+            return delegate.get(hid);
+        }
+
+        @Override
+        public boolean compareAndSet(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+            return delegate.compareAndSet(hid, expected, update);
+        }
+
+        @Override
+        public void remove(@NotNull String hid) {
+            delegate.remove(hid);
+        }
+
+        @Override
+        public @NotNull CompletableFuture<List<@Nullable ChainState>> getAllAsync(@NotNull List<String> hids) {
+            if (stalledReads) {
+                return new CompletableFuture<>();
+            }
+            List<ChainState> states = new ArrayList<>();
+            for (String hid : hids) {
+                states.add(delegate.get(hid));
+            }
+            return CompletableFuture.completedFuture(states);
+        }
+
+        @Override
+        public @NotNull CompletableFuture<Boolean> compareAndSetAsync(@NotNull String hid, @Nullable ChainState expected, @Nullable ChainState update) {
+            BiConsumer<String, FaultyChainStore> beforeUpdate = this.beforeUpdate;
+            if (beforeUpdate != null) {
+                beforeUpdate.accept(hid, this);
+            }
+            if (failedUpdates.contains(hid)) {
+                return CompletableFuture.failedFuture(new IllegalStateException("The update failed."));
+            }
+            if (stalledUpdates.contains(hid)) {
+                return new CompletableFuture<>();
+            }
+            return CompletableFuture.completedFuture(delegate.compareAndSet(hid, expected, update));
+        }
+
+        @Override
+        public void forEach(@NotNull BiConsumer<String, ChainState> action) {
+            delegate.forEach(action);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public long evictionCount() {
+            return delegate.evictionCount();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedPoolTest {
+
+    @Test
+    void givesBackTheReleasedObject() {
+        StripedPool<Object> pool = new StripedPool<>(4, Object::new);
+        Object first = pool.acquire();
+        Object second = pool.acquire();
+        assertNotSame(first, second);
+
+        pool.release(first);
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    void reusesObjectsAcrossShortLivedThreads() throws InterruptedException {
+        AtomicInteger created = new AtomicInteger();
+        StripedPool<Object> pool = new StripedPool<>(() -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+
+        // Like a virtual thread per task, where a ThreadLocal would create an object for every task.
+        for (int i = 0; i < 1000; i++) {
+            Thread thread = new Thread(() -> pool.release(pool.acquire()));
+            thread.start();
+            thread.join();
+        }
+        assertTrue(created.get() < 10, created.get() + " objects created for 1000 threads");
+    }
+
+    @Test
+    void neverSharesAnObjectBetweenThreads() throws Exception {
+        StripedPool<AtomicBoolean> pool = new StripedPool<>(4, AtomicBoolean::new);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                results.add(executor.submit(() -> {
+                    boolean shared = false;
+                    for (int i = 0; i < 100_000; i++) {
+                        AtomicBoolean inUse = pool.acquire();
+                        shared |= !inUse.compareAndSet(false, true);
+                        inUse.set(false);
+                        pool.release(inUse);
+                    }
+                    return shared;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertFalse(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void dropsObjectsWhenFull() {
+        StripedPool<Object> pool = new StripedPool<>(2, Object::new);
+        List<Object> objects = List.of(new Object(), new Object(), new Object());
+        for (Object object : objects) {
+            pool.release(object);
+        }
+
+        List<Object> acquired = List.of(pool.acquire(), pool.acquire(), pool.acquire());
+        assertEquals(2, acquired.stream().filter(objects::contains).count());
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.koralix.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenFormatTest {
+
+    private static final String KEY = "token format test key";
+
+    @Test
+    void verifiesTextTokensOfTheOriginalFormat() throws Exception {
+        assertBaselineTokenVerifies("dGhlIGhhc2hlZCBpZCBvZiBhIHBsYXllcg");
+    }
+
+    @Test
+    void verifiesTextTokensWithNonAsciiHids() throws Exception {
+        assertBaselineTokenVerifies("h\u00e9llo");
+        assertBaselineTokenVerifies("\u73a9\u5bb6");
+    }
+
+    @Test
+    void generatesTextTokensReadableByTheOriginalFormat() {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.TEXT);
+        String hid = "h\u00e9llo";
+        String token = provider.generateToken(hid);
+
+        String[] parts = token.split("\\.");
+        assertEquals(2, parts.length);
+        String body = new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8);
+        String[] fields = body.split(":");
+        assertEquals(4, fields.length);
+        assertEquals(hid, fields[0]);
+        assertEquals(Optional.of(hid), provider.getHidIfValid(token));
+    }
+
+    @Test
+    void parsesTextTokens() {
+        TokenParser parser = new TokenParser();
+        String token = baselineToken("h\u00e9llo", -42, 1_700_000_000, 5, 3600);
+
+        ParsedToken parsed = parser.parse(token);
+        assertNotNull(parsed);
+        assertEquals(new ParsedToken("h\u00e9llo", -42, 1_700_000_000, 5, 3600), parsed);
+        assertTrue(parser.verifySignature(hmac(), Hmac.LENGTH));
+    }
+
+    @Test
+    void rejectsMalformedTextTokens() {
+        TokenParser parser = new TokenParser();
+        String valid = baselineToken("hid", 1, 2, 3, 4);
+
+        assertNull(parser.parse(valid + ".extra"));
+        assertNull(parser.parse("not base64!." + valid.split("\\.")[1]));
+        assertNull(parser.parse(b64("hid:1:2:3") + "." + valid.split("\\.")[1]));
+        assertNull(parser.parse(b64("hid:1:2.1234567890:3") + "." + valid.split("\\.")[1]));
+        assertNull(parser.parse(b64("hid:x:2.3:4") + "." + valid.split("\\.")[1]));
+        assertNull(parser.parse(b64(":1:2.3:4") + "." + valid.split("\\.")[1]));
+    }
+
+    @Test
+    void rejectsTextTokensWithAnotherSignature() {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.TEXT);
+        String token = provider.generateToken("hid");
+        String forged = token.substring(0, token.indexOf('.') + 1) + b64("not the signature");
+
+        assertFalse(provider.verifyToken(forged));
+        assertEquals(1, provider.getMetrics().snapshot().counter("tokens.rejected.bad_signature"));
+    }
+
+    @Test
+    void roundTripsBinaryTokens() throws Exception {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.BINARY);
+        String hid = provider.getHid(UUID.randomUUID());
+        String token = provider.generateToken(hid);
+
+        assertEquals(-1, token.indexOf('.'));
+        assertEquals(((TokenParser.BINARY_HEADER_LENGTH + Hmac.LENGTH) * 4 + 2) / 3, token.length());
+        assertEquals(Optional.of(hid), provider.getHidIfValid(token));
+
+        ChainState state = provider.getChainStore().get(hid);
+        assertNotNull(state);
+        TokenParser parser = new TokenParser();
+        assertEquals(new ParsedToken(hid, state.chainId(), state.creationSeconds(), state.creationNanos(), 3600), parser.parse(token));
+        assertTrue(parser.verifySignature(hmac(), Hmac.LENGTH));
+    }
+
+    @Test
+    void acceptsBinaryTokensWithTheShortestTruncatedSignature() throws Exception {
+        SimpleSecurityProvider provider = SimpleSecurityProvider.builder(KEY, 0L)
+                .tokenFormat(SimpleSecurityProvider.TokenFormat.BINARY)
+                .signatureLength(Hmac.MIN_TRUNCATED_LENGTH)
+                .events(SecurityEvents.builder(event -> { }).build())
+                .build();
+        String hid = provider.getHid(UUID.randomUUID());
+        String token = provider.generateToken(hid);
+
+        assertEquals(TokenParser.BINARY_HEADER_LENGTH + Hmac.MIN_TRUNCATED_LENGTH, Base64.getUrlDecoder().decode(token).length);
+        assertTrue(provider.verifyToken(token));
+
+        TokenParser parser = new TokenParser();
+        assertNotNull(parser.parse(token));
+        assertTrue(parser.verifySignature(hmac(), Hmac.MIN_TRUNCATED_LENGTH));
+        assertNotNull(parser.parse(token));
+        assertFalse(parser.verifySignature(hmac(), Hmac.LENGTH));
+    }
+
+    @Test
+    void rejectsBinarySignaturesShorterThanTheMinimum() throws Exception {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.BINARY);
+        byte[] binary = Base64.getUrlDecoder().decode(provider.generateToken(provider.getHid(UUID.randomUUID())));
+
+        TokenParser parser = new TokenParser();
+        assertNull(parser.parse(encode(Arrays.copyOf(binary, TokenParser.BINARY_HEADER_LENGTH + Hmac.MIN_TRUNCATED_LENGTH - 1))));
+        assertNull(parser.parse(encode(Arrays.copyOf(binary, TokenParser.BINARY_HEADER_LENGTH))));
+        assertNull(parser.parse(encode(Arrays.copyOf(binary, 1))));
+        assertNull(parser.parse(""));
+    }
+
+    @Test
+    void rejectsBinaryTokensWithAnotherVersionOrLength() throws Exception {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.BINARY);
+        String hid = provider.getHid(UUID.randomUUID());
+        String token = provider.generateToken(hid);
+        byte[] binary = Base64.getUrlDecoder().decode(token);
+
+        byte[] otherVersion = binary.clone();
+        otherVersion[0] = TokenParser.BINARY_VERSION + 1;
+        byte[] longer = Arrays.copyOf(binary, binary.length + 1);
+
+        TokenParser parser = new TokenParser();
+        assertNull(parser.parse(encode(otherVersion)));
+        assertNull(parser.parse(encode(longer)));
+        assertFalse(provider.verifyToken(encode(otherVersion)));
+        assertFalse(provider.verifyToken(encode(longer)));
+        assertEquals(2, provider.getMetrics().snapshot().counter("tokens.rejected.bad_format"));
+        assertTrue(provider.verifyToken(token));
+    }
+
+    @Test
+    void rejectsBinaryTokensWithATamperedField() throws Exception {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.BINARY);
+        String token = provider.generateToken(provider.getHid(UUID.randomUUID()));
+        byte[] binary = Base64.getUrlDecoder().decode(token);
+        binary[TokenParser.SECONDS_OFFSET + Long.BYTES - 1] ^= 1;
+
+        assertFalse(provider.verifyToken(encode(binary)));
+        assertEquals(1, provider.getMetrics().snapshot().counter("tokens.rejected.bad_signature"));
+    }
+
+    @Test
+    void requiresHidsOfGetHidForBinaryTokens() {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.BINARY);
+
+        assertThrows(IllegalArgumentException.class, () -> provider.generateToken("not a hashed id"));
+    }
+
+    @Test
+    void requiresTheCanonicalHidForBinaryTokens() throws Exception {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.BINARY);
+        String hid = provider.getHid(UUID.randomUUID());
+        // The last char of the hash carries 2 unused bits, setting one decodes to the same hash.
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        String nonCanonical = hid.substring(0, 42) + alphabet.charAt(alphabet.indexOf(hid.charAt(42)) ^ 1) + "=";
+
+        assertThrows(IllegalArgumentException.class, () -> provider.generateToken(hid.substring(0, 43)));
+        assertThrows(IllegalArgumentException.class, () -> provider.generateToken(nonCanonical));
+        assertTrue(provider.verifyToken(provider.generateToken(hid)));
+    }
+
+    private static String encode(byte[] binary) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(binary);
+    }
+
+    /**
+     * Builds a token like 1.0.0 did, stores its chain and checks that it verifies.
+     */
+    private static void assertBaselineTokenVerifies(String hid) {
+        SimpleSecurityProvider provider = provider(SimpleSecurityProvider.TokenFormat.TEXT);
+        Instant now = Instant.now();
+        ChainState state = new ChainState(123456789L, now.getEpochSecond(), now.getNano());
+        assertTrue(provider.getChainStore().compareAndSet(hid, null, state));
+
+        String token = baselineToken(hid, state.chainId(), state.creationSeconds(), state.creationNanos(), 3600);
+        assertTrue(provider.verifyToken(token));
+        assertEquals(Optional.of(hid), provider.getHidIfValid(token));
+    }
+
+    /**
+     * Builds a text token with the string operations of 1.0.0.
+     */
+    static String baselineToken(String hid, long chainId, long seconds, int nanos, long ttl) {
+        String body = b64(hid + ":" + chainId + ":" + seconds + "." + String.format("%09d", nanos) + ":" + ttl);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return body + "." + Base64.getUrlEncoder().encodeToString(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String b64(String text) {
+        return Base64.getUrlEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Hmac hmac() {
+        try {
+            return Hmac.sha256(new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static SimpleSecurityProvider provider(SimpleSecurityProvider.TokenFormat format) {
+        return SimpleSecurityProvider.builder(KEY, 0L)
+                .tokenFormat(format)
+                .events(SecurityEvents.builder(event -> { }).build())
+                .build();
+    }
+
+}